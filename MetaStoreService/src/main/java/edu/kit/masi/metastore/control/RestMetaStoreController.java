@@ -26,13 +26,18 @@ import edu.kit.masi.metastore.utils.KitDataManagerUtil;
 import edu.kit.masi.metastore.utils.MetsUtility;
 import edu.kit.masi.metastore.utils.XsdUtil;
 import edu.kit.masi.plugin.search.ISearchPlugin;
+import edu.kit.masi.plugin.search.SearchResultPage;
 import edu.kit.masi.plugin.search.impl.SearchPluginFactory;
 import edu.kit.masi.rest.security.impl.SecurityHelper;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.json.JSONArray;
@@ -51,6 +56,23 @@ public class RestMetaStoreController {
    * Logger for debugging purposes.
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(RestMetaStoreController.class);
+  /**
+   * Type of cursors created by the search plugin.
+   */
+  private static final String CURSOR_TYPE_PLUGIN = "plugin";
+  /**
+   * Type of cursors created by the database search.
+   */
+  private static final String CURSOR_TYPE_DATABASE = "db";
+  /**
+   * Separator of the parts of a cursor.
+   */
+  private static final String CURSOR_SEPARATOR = "|";
+  /**
+   * Maximum number of hits fetched per request. If too many hits are filtered
+   * due to missing authorization, the page is returned shorter with a cursor.
+   */
+  private static final int MAX_NO_OF_FETCHED_HITS = 10000;
 
   /**
    * Connection to database.
@@ -304,82 +326,174 @@ public class RestMetaStoreController {
 
   // <editor-fold defaultstate="collapsed" desc="Search service">
   /**
-   * Search for all mets documents matching the given term.
+   * Search for all mets documents matching the given term. The documents are
+   * returned page by page. The cursor of the result continues the search
+   * directly after the last hit of the page. A page may contain less hits
+   * than requested if many hits are filtered due to missing authorization.
    *
    * @param pContext Context of user.
    * @param pGroupId GoupId of user,
    * @param pIndexes All provided indexes. (Index identical to group)
    * @param pPrefixes All provided prefixes.
    * @param pSearchTerms search terms.
+   * @param pCombination How to combine multiple terms.
    * @param maxNoOfHits maximum number of hits.
+   * @param pCursor Cursor returned with the previous page. (null for first
+   * page)
    * @param pShort Return only Digital object IDs instead of document.
-   * @return All fitting mets documents as JSON array.
+   * @return Fitting mets documents as JSON array and cursor for the next page.
    * @throws MetaStoreException An error occurred.
    */
-  public String searchForMetsDocuments(HttpContext pContext, String pGroupId, List<String> pIndexes, List<String> pPrefixes, List<String> pSearchTerms, int maxNoOfHits, boolean pShort) throws MetaStoreException {
+  public SearchResult searchForMetsDocuments(HttpContext pContext, String pGroupId, List<String> pIndexes, List<String> pPrefixes, List<String> pSearchTerms, ISearchPlugin.Combination pCombination, int maxNoOfHits, String pCursor, boolean pShort) throws MetaStoreException {
     IAuthorizationContext authorizationContext = SecurityHelper.checkForAuthorization(pContext, pGroupId, Role.GUEST);
 
     StringBuilder returnValue = new StringBuilder();
     ReturnType returnType = ReturnType.JSON;  // may be adaptable later.
     ISearchPlugin searchPlugin = SearchPluginFactory.getSearchPlugin();
-    Set<String> allDigitalObjectIds = null;
-    if (searchPlugin == null) {
-      allDigitalObjectIds = metsUtility.searchFullTextWithId(pSearchTerms.get(0));
-    } else {
-      String[] allTerms = pSearchTerms.toArray(new String[pSearchTerms.size()]);
-      String[] types = pPrefixes.toArray(new String[pPrefixes.size()]);
-      String[] searchResults = searchPlugin.searchForMets(ISearchPlugin.Combination.CONJUNCTION, types, allTerms);
-      allDigitalObjectIds = new HashSet<>(Arrays.asList(searchResults));
+    String cursorType = searchPlugin == null ? CURSOR_TYPE_DATABASE : CURSOR_TYPE_PLUGIN;
+    String fingerprint = getSearchFingerprint(pGroupId, pPrefixes, pSearchTerms, pCombination);
+    String position = pCursor == null ? null : decodeCursor(pCursor, cursorType, fingerprint);
+    String[] allTerms = pSearchTerms.toArray(new String[pSearchTerms.size()]);
+    String[] types = pPrefixes.toArray(new String[pPrefixes.size()]);
+    Set<String> allDigitalObjectIds = new LinkedHashSet<>();
+    boolean moreHitsAvailable = true;
+    int noOfFetchedHits = 0;
+    // Fetch further pages as long as hits are filtered due to missing authorization.
+    while (allDigitalObjectIds.size() < maxNoOfHits && moreHitsAvailable && noOfFetchedHits < MAX_NO_OF_FETCHED_HITS) {
+      int remainingHits = Math.min(maxNoOfHits - allDigitalObjectIds.size(), MAX_NO_OF_FETCHED_HITS - noOfFetchedHits);
+      Set<String> pageIds;
+      if (searchPlugin == null) {
+        // IDs are sorted. The last ID is the position of the next page.
+        pageIds = metsUtility.searchFullTextWithId(pSearchTerms, pPrefixes,
+                pCombination == ISearchPlugin.Combination.CONJUNCTION, position, remainingHits);
+        moreHitsAvailable = pageIds.size() >= remainingHits;
+        for (String digitalObjectId : pageIds) {
+          position = digitalObjectId;
+        }
+      } else {
+        SearchResultPage page;
+        try {
+          page = searchPlugin.searchForMets(pCombination, types, allTerms, remainingHits, position);
+        } catch (IllegalArgumentException iae) {
+          throw new MetaStoreException("Invalid cursor '" + pCursor + "'!", iae, StatusCode.BAD_REQUEST.getStatusCode());
+        }
+        // Keep order of hits (relevance).
+        pageIds = new LinkedHashSet<>(Arrays.asList(page.getIds()));
+        position = page.getCursor();
+        moreHitsAvailable = position != null;
+      }
+      LOGGER.debug("Found {} hits", pageIds.size());
+      noOfFetchedHits += pageIds.size();
+      // filter Digital Object IDs
+      filterAuthorized(authorizationContext, pageIds);
+      LOGGER.debug("Found {} hits after filtering!", pageIds.size());
+      allDigitalObjectIds.addAll(pageIds);
     }
-    LOGGER.debug("Found {} hits", allDigitalObjectIds.size());
+    String nextCursor = moreHitsAvailable ? encodeCursor(cursorType, fingerprint, position) : null;
     if (allDigitalObjectIds.size() > 0) {
-      // filter Digital Object IDs
-      SecurityHelper.filter(authorizationContext, Role.GUEST, allDigitalObjectIds);
-      LOGGER.debug("Found {} hits after filtering!", allDigitalObjectIds.size());
-      if (allDigitalObjectIds.size() > 0) {
-        // filter Digital Object IDs
-        int noOfDocuments = 1;
-        if (returnType.equals(ReturnType.JSON)) {
-          JSONArray array = new JSONArray();
-          for (String digitalObjectIds : allDigitalObjectIds) {
-            // JSONObject jsonObject =
-            // arango.getJsonObject(MetaStoreUtility.getHashValue(digitalObjectIds));
-            // returnValue.put(jsonObject);
-            JSONObject item;
-            if (pShort) {
-              item = new JSONObject();
-              item.put("digitalObjectId", digitalObjectIds);
-            } else {
-              item = new JSONObject(metsUtility.getMetsDocument(digitalObjectIds, returnType));
-            }
-            LOGGER.debug("Add document #{} of {}!", noOfDocuments, maxNoOfHits);
-            array.put(item);
-            noOfDocuments++;
-            if (noOfDocuments > maxNoOfHits) {
-              break;
-            }
+      int noOfDocuments = 1;
+      if (returnType.equals(ReturnType.JSON)) {
+        JSONArray array = new JSONArray();
+        for (String digitalObjectIds : allDigitalObjectIds) {
+          // JSONObject jsonObject =
+          // arango.getJsonObject(MetaStoreUtility.getHashValue(digitalObjectIds));
+          // returnValue.put(jsonObject);
+          JSONObject item;
+          if (pShort) {
+            item = new JSONObject();
+            item.put("digitalObjectId", digitalObjectIds);
+          } else {
+            item = new JSONObject(metsUtility.getMetsDocument(digitalObjectIds, returnType));
           }
-          return array.toString();
-        } else {
-          returnValue.append("<array>\n");
-          for (String digitalObjectIds : allDigitalObjectIds) {
-            if (pShort) {
-             returnValue.append(String.format("<digitalObjectId>%s</digitalObjectId>", digitalObjectIds));
-            } else {
-            returnValue.append(
-                    metaStoreController.getMetsDocument(digitalObjectIds, returnType)
-                            .replace("<?xml version=\"1.0\" encoding=\"UTF-8\"?>", "") + "\n");
-            }
-            noOfDocuments++;
-            if (noOfDocuments > maxNoOfHits) {
-              break;
-            }
+          LOGGER.debug("Add document #{} of {}!", noOfDocuments, maxNoOfHits);
+          array.put(item);
+          noOfDocuments++;
+          if (noOfDocuments > maxNoOfHits) {
+            break;
           }
-          returnValue.append("</array>");
         }
+        return new SearchResult(array.toString(), nextCursor);
+      } else {
+        returnValue.append("<array>\n");
+        for (String digitalObjectIds : allDigitalObjectIds) {
+          if (pShort) {
+           returnValue.append(String.format("<digitalObjectId>%s</digitalObjectId>", digitalObjectIds));
+          } else {
+          returnValue.append(
+                  metaStoreController.getMetsDocument(digitalObjectIds, returnType)
+                          .replace("<?xml version=\"1.0\" encoding=\"UTF-8\"?>", "") + "\n");
+          }
+          noOfDocuments++;
+          if (noOfDocuments > maxNoOfHits) {
+            break;
+          }
+        }
+        returnValue.append("</array>");
       }
     }
-    return returnValue.toString();
+    return new SearchResult(returnValue.toString(), nextCursor);
+  }
+
+  /**
+   * Remove all IDs the user is not authorized for. The order of the remaining
+   * IDs is preserved.
+   *
+   * @param pAuthorizationContext Context of user.
+   * @param pDigitalObjectIds IDs of digital objects.
+   */
+  private void filterAuthorized(IAuthorizationContext pAuthorizationContext, Set<String> pDigitalObjectIds) {
+    Set<String> authorizedIds = new HashSet<>(pDigitalObjectIds);
+    SecurityHelper.filter(pAuthorizationContext, Role.GUEST, authorizedIds);
+    pDigitalObjectIds.retainAll(authorizedIds);
+  }
+
+  /**
+   * Get fingerprint of a search. A cursor is only valid for the search it was
+   * created for.
+   *
+   * @param pGroupId GoupId of user,
+   * @param pPrefixes All provided prefixes.
+   * @param pSearchTerms search terms.
+   * @param pCombination How to combine multiple terms.
+   * @return Fingerprint.
+   */
+  private static String getSearchFingerprint(String pGroupId, List<String> pPrefixes, List<String> pSearchTerms, ISearchPlugin.Combination pCombination) {
+    return Integer.toHexString(Arrays.asList(pGroupId, pPrefixes, pSearchTerms, pCombination.name()).hashCode());
+  }
+
+  /**
+   * Create opaque cursor for the next page.
+   *
+   * @param pCursorType Type of the cursor.
+   * @param pFingerprint Fingerprint of the search.
+   * @param pPosition Position of the next page.
+   * @return Cursor.
+   */
+  private static String encodeCursor(String pCursorType, String pFingerprint, String pPosition) {
+    String cursor = pCursorType + CURSOR_SEPARATOR + pFingerprint + CURSOR_SEPARATOR + pPosition;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Get position of the next page from cursor.
+   *
+   * @param pCursor Cursor.
+   * @param pCursorType Expected type of the cursor.
+   * @param pFingerprint Fingerprint of the search.
+   * @return Position of the next page.
+   * @throws MetaStoreException Cursor is invalid or belongs to another search.
+   */
+  private static String decodeCursor(String pCursor, String pCursorType, String pFingerprint) throws MetaStoreException {
+    String[] parts;
+    try {
+      parts = new String(Base64.getUrlDecoder().decode(pCursor), StandardCharsets.UTF_8).split(Pattern.quote(CURSOR_SEPARATOR), 3);
+    } catch (IllegalArgumentException iae) {
+      throw new MetaStoreException("Invalid cursor '" + pCursor + "'!", iae, StatusCode.BAD_REQUEST.getStatusCode());
+    }
+    if (parts.length != 3 || !parts[0].equals(pCursorType) || !parts[1].equals(pFingerprint)) {
+      throw new MetaStoreException("Cursor '" + pCursor + "' doesn't belong to this search!", StatusCode.BAD_REQUEST.getStatusCode());
+    }
+    return parts[2];
   }
   // </editor-fold>
 
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.control;
+
+/**
+ * Result of a search holding one page of documents and the cursor for the next
+ * page.
+ *
+ * @author hartmann-v
+ */
+public class SearchResult {
+
+  /**
+   * Documents of the page.
+   */
+  private final String documents;
+  /**
+   * Cursor for the next page.
+   */
+  private final String cursor;
+
+  /**
+   * Constructor.
+   *
+   * @param pDocuments Documents of the page.
+   * @param pCursor Cursor for the next page. (null if no further hits
+   * available)
+   */
+  public SearchResult(String pDocuments, String pCursor) {
+    documents = pDocuments;
+    cursor = pCursor;
+  }
+
+  /**
+   * Get documents of the page.
+   *
+   * @return Documents (JSON array).
+   */
+  public String getDocuments() {
+    return documents;
+  }
+
+  /**
+   * Get cursor for the next page.
+   *
+   * @return Cursor or null if no further hits available.
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}
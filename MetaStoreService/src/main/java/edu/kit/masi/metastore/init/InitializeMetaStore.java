@@ -18,7 +18,10 @@ package edu.kit.masi.metastore.init;
 import edu.kit.masi.metastore.control.MetaStoreController;
 import edu.kit.masi.metastore.exception.MetaStoreException;
 import edu.kit.masi.metastore.exception.StatusCode;
+import edu.kit.masi.metastore.utils.IngestExecutor;
 import edu.kit.masi.metastore.utils.KitDataManagerUtil;
+import edu.kit.masi.metastore.utils.SearchExecutor;
+import edu.kit.masi.metastore.utils.ValidationExecutor;
 import edu.kit.masi.metastore.utils.XsdUtil;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,7 +65,10 @@ public class InitializeMetaStore implements ServletContextListener {
 
   @Override
   public void contextDestroyed(ServletContextEvent sce) {
-    // do nothing
+    MetaStoreController.getArangoDb().shutdown();
+    ValidationExecutor.shutdown();
+    IngestExecutor.shutdown();
+    SearchExecutor.shutdown();
   }
 
   /**
@@ -18,7 +18,10 @@ package edu.kit.masi.rest.service;
 import com.sun.jersey.api.core.HttpContext;
 import edu.kit.dama.util.Constants;
 import edu.kit.masi.metastore.control.RestMetaStoreController;
+import edu.kit.masi.metastore.control.SearchResult;
 import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import edu.kit.masi.plugin.search.ISearchPlugin;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -47,6 +50,10 @@ public class SearchService extends BaseService {
    * Logger for this class.
    */
   private static final Logger LOGGER = LoggerFactory.getLogger(RegistrationService.class);
+  /**
+   * Header holding the cursor for the next page.
+   */
+  public static final String CURSOR_HEADER = "X-Continuation-Token";
 
 //  SecurityContext securityContext;
   @Context
@@ -56,18 +63,23 @@ public class SearchService extends BaseService {
    * Search for term(s) in all mets documents. Result will be filtered by
    * authorization of KIT Data Manager.
    *
-   * @param pSearchTerms Search term(s) (Only one search term allowed yet)
+   * @param pSearchTerms Search term(s)
    * @param pIndexes Group(s) used for searching. (Not supported yet)
-   * @param pTypes Types (prefix of namespaces) used for searching. (Not
-   * supported yet)
+   * @param pTypes Types (prefix of namespaces) used for searching.
+   * @param pCombination How to combine multiple terms (CONJUNCTION or
+   * DISJUNCTION) [default: CONJUNCTION]
    * @param pGroupId The group id the search belongs to [default: WORLD]
    * @param pMaxNoOfHits Maximum number of hits.
+   * @param pCursor Cursor for the next page. (Returned in header
+   * 'X-Continuation-Token' of the previous page)
    * @param pShortList Show only Digital Object Identifiers.
-   * @return Response holding status and array of found METS documents.
+   * @return Response holding status and array of found METS documents. If
+   * further hits are available the header 'X-Continuation-Token' holds the
+   * cursor for the next page.
    */
   @GET
   @Produces("application/json")
-  @ApiOperation(value = "Full text search on metadata.", notes = "Returns the complete documents.", tags = "Search")
+  @ApiOperation(value = "Full text search on metadata.", notes = "Returns the complete documents. If further hits are available the header '" + CURSOR_HEADER + "' holds the cursor for the next page.", tags = "Search")
   @ApiResponses(value = {
     @ApiResponse(code = 200, message = "Successfully retrieval of search results")
     ,
@@ -81,15 +93,18 @@ public class SearchService extends BaseService {
           @ApiParam(value = "For non public search provide group connected to user.", required = false, defaultValue = "WORLD") @QueryParam("groupId") String pGroupId,
           @ApiParam(value = "Search term(s)", allowMultiple = true, required = true) @QueryParam("term") List<String> pSearchTerms,
           @ApiParam(value = "Which indices should be searched (linked with groupIds). (Not supported yet!)", allowMultiple = true, required = false, defaultValue = "_all") @QueryParam("index") List<String> pIndexes,
-          @ApiParam(value = "Which types should be searched (linked with metadata schema). (Not supported yet!)", allowMultiple = true, required = false, defaultValue = "_all") @QueryParam("type") List<String> pTypes,
+          @ApiParam(value = "Which types should be searched (linked with metadata schema).", allowMultiple = true, required = false, defaultValue = "_all") @QueryParam("type") List<String> pTypes,
+          @ApiParam(value = "How to combine multiple terms: CONJUNCTION (all terms) or DISJUNCTION (any term).", required = false, defaultValue = "CONJUNCTION") @QueryParam("combination") String pCombination,
           @ApiParam(value = "Maximum number of hits.", required = false, defaultValue = "20") @QueryParam("size") int pMaxNoOfHits,
+          @ApiParam(value = "Cursor for the next page (see header '" + CURSOR_HEADER + "' of previous page).", required = false) @QueryParam("cursor") String pCursor,
           @ApiParam(value = "Short - Show only Digital Object IDs.", required = false, defaultValue = "false") @QueryParam("short") boolean pShort) {
     if (LOGGER.isTraceEnabled()) {
-      LOGGER.trace("getSearchResult: groupID = {} & searchTerms = {} & indexes = {} & types = {} & maxNoOfHits = {} & short = {}", pGroupId, pSearchTerms, pIndexes, pTypes, pMaxNoOfHits, pShort);
+      LOGGER.trace("getSearchResult: groupID = {} & searchTerms = {} & indexes = {} & types = {} & combination = {} & maxNoOfHits = {} & cursor = {} & short = {}", pGroupId, pSearchTerms, pIndexes, pTypes, pCombination, pMaxNoOfHits, pCursor, pShort);
     }
 
     Response.Status statusCode = Response.Status.OK;
     String jsonString;
+    String nextCursor = null;
 
     if (pGroupId == null) {
       pGroupId = Constants.WORLD_GROUP_ID; // Set to default value.
@@ -98,8 +113,21 @@ public class SearchService extends BaseService {
       pMaxNoOfHits = 20; // Set to default value.
     }
     try {
+      ISearchPlugin.Combination combination = ISearchPlugin.Combination.CONJUNCTION; // Set to default value.
+      if (pCombination != null && !pCombination.trim().isEmpty()) {
+        try {
+          combination = ISearchPlugin.Combination.valueOf(pCombination.trim().toUpperCase());
+        } catch (IllegalArgumentException iae) {
+          throw new MetaStoreException("Unknown combination '" + pCombination + "'!", StatusCode.BAD_REQUEST.getStatusCode());
+        }
+      }
       RestMetaStoreController msc = new RestMetaStoreController();
-      jsonString = msc.searchForMetsDocuments(context, pGroupId, pIndexes, pTypes, pSearchTerms, pMaxNoOfHits, pShort);
+      if (pCursor != null && pCursor.trim().isEmpty()) {
+        pCursor = null;
+      }
+      SearchResult searchResult = msc.searchForMetsDocuments(context, pGroupId, pIndexes, pTypes, pSearchTerms, combination, pMaxNoOfHits, pCursor, pShort);
+      jsonString = searchResult.getDocuments();
+      nextCursor = searchResult.getCursor();
 
     } catch (MetaStoreException ex) {
       LOGGER.error("Error while searching.", ex);
@@ -111,6 +139,10 @@ public class SearchService extends BaseService {
       statusCode = Response.Status.INTERNAL_SERVER_ERROR;
     }
 
-    return Response.status(statusCode).entity(jsonString).build();
+    Response.ResponseBuilder response = Response.status(statusCode).entity(jsonString);
+    if (nextCursor != null) {
+      response.header(CURSOR_HEADER, nextCursor);
+    }
+    return response.build();
   }
 }
@@ -18,25 +18,32 @@ package edu.kit.masi.metastore.control;
 import edu.kit.masi.metastore.db.ArangoDB;
 import edu.kit.masi.metastore.exception.MetaStoreException;
 import edu.kit.masi.metastore.exception.StatusCode;
+import edu.kit.masi.metastore.model.MetsArangoPOJO;
+import edu.kit.masi.metastore.model.PreparedSection;
 import edu.kit.masi.metastore.model.ReturnType;
 import edu.kit.masi.metastore.model.SectionDocument;
+import edu.kit.masi.metastore.model.StoredMetsDocument;
+import edu.kit.masi.metastore.utils.IndexProfile;
+import edu.kit.masi.metastore.utils.IngestExecutor;
 import edu.kit.masi.metastore.utils.MetaStoreUtility;
+import edu.kit.masi.metastore.utils.MetsSplitter;
 import edu.kit.masi.metastore.utils.MetsUtility;
+import edu.kit.masi.metastore.utils.XmlToJson;
 import edu.kit.masi.metastore.utils.XmlUtility;
 import edu.kit.masi.metastore.utils.XsdUtil;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.xml.validation.Schema;
 import org.apache.commons.io.IOUtils;
 import org.fzk.tools.xml.JaxenUtil;
 import org.jdom.Namespace;
-import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.XML;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -103,10 +110,13 @@ public class MetaStoreController implements IMetaStoreController {
       throw new MetaStoreException("No id provided for METS file", StatusCode.BAD_REQUEST.getStatusCode());
     }
     String hashedValue = MetaStoreUtility.getHashValue(pDigitalObjectId);
-    if (!arango.getRegisteredXsdType(hashedValue).equals(MetsUtility.METS_NAMESPACE)) {
+    // METS document and all sections are fetched with one query.
+    StoredMetsDocument metsDocument = arango.getMetsDocumentWithSections(hashedValue, pDigitalObjectId,
+            returnType == ReturnType.JSON);
+    if (!MetsUtility.METS_NAMESPACE.equals(metsDocument.getType())) {
       throw new MetaStoreException("Invalid id: Not a METS file", StatusCode.NOT_FOUND.getStatusCode());
     }
-    return metsUtility.getMetsDocument(pDigitalObjectId, returnType);
+    return metsUtility.getMetsDocument(metsDocument, returnType);
   }
 
   @Override
@@ -117,32 +127,66 @@ public class MetaStoreController implements IMetaStoreController {
     // store and index sections.
     try {
       String hashedKey = MetaStoreUtility.getHashValue(pDigitalObjectId);
-      Document document = JaxenUtil.getDocument(pMetsDocument);
-      Namespace documentNamespace = document.getRootElement().getNamespace();
+      // Large METS documents are validated and split as stream (no DOM).
+      boolean streaming = pMetsDocument.length() > arango.getProperties().getStreamingThreshold();
+      // Otherwise METS document is parsed only once. Validation, splitting,
+      // serialization and transformation work on the same DOM.
+      org.w3c.dom.Document document = null;
+      String documentNamespace;
+      if (streaming) {
+        documentNamespace = MetsSplitter.getRootNamespace(pMetsDocument);
+      } else {
+        document = XmlUtility.strToXmlDocument(pMetsDocument);
+        documentNamespace = document.getDocumentElement().getNamespaceURI();
+      }
       // Check for METS namespace
-      if (!MetsUtility.METS_NAMESPACE.equalsIgnoreCase(documentNamespace.getURI())) {
+      if (!MetsUtility.METS_NAMESPACE.equalsIgnoreCase(documentNamespace)) {
         throw new MetaStoreException("Invalid METS document: Namespace mismatch",
                 StatusCode.BAD_REQUEST.getStatusCode());
       }
       // <editor-fold defaultstate="collapsed" desc="validate wellformed
       // XML">
-      String xsdForMets = getXsdAsString(documentNamespace.getURI());
-      if (!XmlUtility.validate(pMetsDocument, xsdForMets)) {
+      Schema metsSchema = getSchema(documentNamespace);
+      boolean isValid = streaming ? XmlUtility.validate(pMetsDocument, metsSchema)
+              : XmlUtility.validate(document, metsSchema);
+      if (!isValid) {
         throw new MetaStoreException("XML is not valid!", StatusCode.BAD_REQUEST.getStatusCode());
       }
       // </editor-fold>
 
       // <editor-fold defaultstate="collapsed" desc="Validate nested
       // sections.">
-      List<SectionDocument> nestedSections = metsUtility.validateNestedSections(pMetsDocument, pDigitalObjectId);
+      List<SectionDocument> nestedSections;
+      if (streaming) {
+        nestedSections = metsUtility.validateNestedSections(pMetsDocument, pDigitalObjectId);
+      } else {
+        nestedSections = metsUtility.validateNestedSections(document, pDigitalObjectId);
+      }
       // </editor-fold>
 
       // <editor-fold defaultstate="collapsed" desc="Store nested sections
       // plus METS file">
-      arango.postXML(hashedKey, pMetsDocument, documentNamespace.getURI());
+      // Sections are prepared and indexed concurrently.
+      List<IngestExecutor.IngestTask<PreparedSection>> prepareTasks = new ArrayList<>();
       for (SectionDocument sectionDoc : nestedSections) {
-        MetaStoreUtility.storeNestedSection(arango, sectionDoc);
+        prepareTasks.add(() -> MetaStoreUtility.prepareNestedSection(arango, sectionDoc));
+      }
+      List<PreparedSection> preparedSections = IngestExecutor.executeAll(prepareTasks);
+      List<MetsArangoPOJO> sectionDocuments = new ArrayList<>();
+      for (PreparedSection preparedSection : preparedSections) {
+        sectionDocuments.add(preparedSection.getDocument());
+      }
+      // All or nothing: METS file and sections are stored within one transaction.
+      arango.storeMetsDocument(hashedKey, pMetsDocument, documentNamespace, sectionDocuments);
+      List<IngestExecutor.IngestTask<Void>> indexTasks = new ArrayList<>();
+      for (PreparedSection preparedSection : preparedSections) {
+        indexTasks.add(() -> {
+          MetaStoreUtility.indexNestedSection(arango, preparedSection);
+          return null;
+        });
       }
+      // Join: response is sent after all sections are indexed.
+      IngestExecutor.executeAll(indexTasks);
       // </editor-fold>
     } catch (MetaStoreException ex) {
       throw ex;
@@ -187,9 +231,8 @@ public class MetaStoreController implements IMetaStoreController {
     try {
       document = JaxenUtil.getDocument(pSectionDocument);
       String nameSpace = document.getRootElement().getNamespace().getURI();
-      String xsdForSectionDocument = getXsdAsString(nameSpace);
       // validating the section against the valid XSD Before updating
-      if (!XmlUtility.validate(pSectionDocument, xsdForSectionDocument)) {
+      if (!XmlUtility.validate(pSectionDocument, getSchema(nameSpace))) {
         throw new MetaStoreException("XML is not valid!", StatusCode.BAD_REQUEST.getStatusCode());
       }
       // Checking for no of documents present with same namespace and ID
@@ -216,10 +259,15 @@ public class MetaStoreController implements IMetaStoreController {
       Map<String, String> arrayData = new HashMap<String, String>();
       arrayData.put("xmlData", olderXmlData);
       arrayData.put("modifiedDate", sdf.format(toDaysDate).toString());
-      String jsonString = XML.toJSONObject(pSectionDocument).toString();
+      JSONObject sectionJson = XmlToJson.toJSONObject(pSectionDocument);
+      String jsonString = sectionJson.toString();
 
-      String finalStr = "{\"json\":" + jsonString + "}";
+      IndexProfile indexProfile = arango.getIndexProfile(MetaStoreUtility.getHashValue(nameSpace));
+      String finalStr = "{\"json\":" + jsonString + ",\"searchText\":"
+              + JSONObject.quote(indexProfile.buildSearchText(sectionJson)) + "}";
       String xmlKey = arango.updateXMLData(documentToUpdateKey, pSectionDocument, finalStr, arrayData);
+      // JSON rendering of the whole METS document is outdated now.
+      arango.invalidateMetsJson(MetaStoreUtility.getHashValue(pDigitalObjectId));
 
       // Index section document
       IIndexPlugin indexPlugin = IndexPluginFactory.getIndexPlugin();
@@ -229,10 +277,11 @@ public class MetaStoreController implements IMetaStoreController {
         indexPlugin.indexJsonDocument(jsonString, pDigitalObjectId, prefix);
       }
 
-      // applying index on new json
-      JSONObject getStoredJson = arango.getJsonObject(documentToUpdateKey);
-      Set<String> indexSet = MetaStoreUtility.applyIndexing(getStoredJson);
-      arango.applyIndexes(indexSet);
+      // applying index on new json (only for legacy indexing per path)
+      if (arango.isPathIndexing()) {
+        Set<String> indexSet = indexProfile.getIndexPaths(sectionJson);
+        arango.applyIndexes(indexSet);
+      }
 
     } catch (MetaStoreException e) {
       throw e;
@@ -251,8 +300,7 @@ public class MetaStoreController implements IMetaStoreController {
       Namespace documentNamespace = document.getRootElement().getNamespace();
       // <editor-fold defaultstate="collapsed" desc="validate wellformed
       // XML">
-      String xsdString = getXsdAsString(documentNamespace.getURI());
-      if (!XmlUtility.validate(pXmlDocument, xsdString)) {
+      if (!XmlUtility.validate(pXmlDocument, getSchema(documentNamespace.getURI()))) {
         throw new MetaStoreException("XML is not valid!");
       }
       isValid = true;
@@ -275,19 +323,19 @@ public class MetaStoreController implements IMetaStoreController {
       // filter Digital Object IDs
       int noOfDocuments = 1;
       if (returnType.equals(ReturnType.JSON)) {
-        JSONArray array = new JSONArray();
+        // JSON renderings are joined without parsing them again.
+        StringBuilder array = new StringBuilder("[");
         for (String digitalObjectIds : allDigitalObjectIds) {
-          // JSONObject jsonObject =
-          // arango.getJsonObject(MetaStoreUtility.getHashValue(digitalObjectIds));
-          // returnValue.put(jsonObject);
-          JSONObject item = new JSONObject(metsUtility.getMetsDocument(digitalObjectIds, returnType));
-          array.put(item);
+          if (noOfDocuments > 1) {
+            array.append(',');
+          }
+          array.append(metsUtility.getMetsDocument(digitalObjectIds, returnType));
           noOfDocuments++;
           if (noOfDocuments > maxNoOfHits) {
             break;
           }
         }
-        return array.toString();
+        return array.append(']').toString();
       } else {
         StringBuilder returnValue = new StringBuilder();
         returnValue.append("<array>\n");
@@ -316,4 +364,15 @@ public class MetaStoreController implements IMetaStoreController {
     String xsdForMets = arango.getRegisteredXsd(xsdHashValue);
     return xsdForMets;
   }
+
+  /**
+   * Get compiled schema registered for namespace.
+   *
+   * @param pNamespace Namespace of the xsd.
+   * @return Compiled schema.
+   * @throws MetaStoreException No XSD registered for namespace.
+   */
+  private Schema getSchema(String pNamespace) throws MetaStoreException {
+    return arango.getRegisteredSchema(MetaStoreUtility.getHashValue(pNamespace));
+  }
 }
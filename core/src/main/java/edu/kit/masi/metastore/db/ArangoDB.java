@@ -15,31 +15,52 @@
  */
 package edu.kit.masi.metastore.db;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import javax.xml.validation.Schema;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.arangodb.ArangoConfigure;
 import com.arangodb.ArangoDriver;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
 import com.arangodb.ArangoException;
-import com.arangodb.ArangoHost;
 import com.arangodb.DocumentCursor;
 import com.arangodb.entity.BaseDocument;
-import com.arangodb.entity.DocumentEntity;
+import com.arangodb.entity.IndexEntity;
+import com.arangodb.entity.IndexType;
 import com.arangodb.entity.IndexesEntity;
+import com.arangodb.entity.TransactionEntity;
 import edu.kit.masi.metastore.exception.MetaStoreException;
 import edu.kit.masi.metastore.exception.StatusCode;
 import edu.kit.masi.metastore.utils.ArangoPropertyHandler;
+import edu.kit.masi.metastore.utils.IdSetUtility;
+import edu.kit.masi.metastore.utils.IndexProfile;
+import edu.kit.masi.metastore.utils.MetaStoreUtility;
+import edu.kit.masi.metastore.utils.XmlUtility;
 import edu.kit.masi.metastore.model.MetsArangoPOJO;
+import edu.kit.masi.metastore.model.StoredMetsDocument;
 import org.json.JSONException;
 
 /**
- * Class handling all communication with database.
+ * Class handling all communication with database. The class is thread safe:
+ * every request leases its own driver from a pool (see
+ * 'connectionPoolSize' in DatabaseProperties.properties).
  *
  * @author vaibhav
  */
@@ -68,32 +89,207 @@ public class ArangoDB {
    */
   private static final String XML_ATTRIBUTE = "xml";
   /**
-   * Driver for accessing data from arangodb.
+   * Attribute names for storing attributes. METS JSON: JSON rendering of the
+   * whole METS document (created on first read, removed on update of a
+   * section).
    */
-  private ArangoDriver driver;
+  private static final String METS_JSON_ATTRIBUTE = "metsJson";
+  /**
+   * Attribute names for storing attributes. Search text: selected values of a
+   * section covered by one fulltext index.
+   */
+  private static final String SEARCH_TEXT_ATTRIBUTE = "searchText";
+  /**
+   * Attribute names for storing attributes. Index paths: JSON paths of
+   * sections indexed for this namespace (index profile).
+   */
+  private static final String INDEX_PATHS_ATTRIBUTE = "indexPaths";
+  /**
+   * Attribute names for storing attributes. Search key: digital object ID of
+   * the section encoded by IdSetUtility.toKey. Used for sorting and paging
+   * the hits of a search in the same order as in Java.
+   */
+  private static final String SEARCH_KEY_ATTRIBUTE = "mainXmlKey";
+  /**
+   * Attribute names for storing attributes. JSON: JSON representation of a
+   * section.
+   */
+  private static final String JSON_ATTRIBUTE = "json";
+  /**
+   * Maximum number of sections updated by one query while adding missing
+   * attributes to sections stored by an older version.
+   */
+  private static final int BACKFILL_BATCH_SIZE = 100;
+  /**
+   * Error number of arangodb if a document with the same key already exists.
+   */
+  private static final int ERROR_UNIQUE_CONSTRAINT_VIOLATED = 1210;
+  /**
+   * Attributes of the persistent index for looking up sections. (Order
+   * matters!)
+   */
+  private static final String[] SECTION_INDEX_FIELDS = {"mainXmlHandler", "type", "id"};
+  /**
+   * Server side transaction storing METS document and all its sections. The
+   * documents are passed as JSON strings to keep the embedded JSON objects
+   * untouched.
+   */
+  private static final String STORE_METS_TRANSACTION = "function (params) {"
+          + " var collection = require('@arangodb').db._collection(params.collection);"
+          + " collection.insert(JSON.parse(params.mets));"
+          + " JSON.parse(params.sections).forEach(function (section) { collection.insert(section); });"
+          + " return true; }";
+  /**
+   * Pool of drivers for accessing data from arangodb.
+   */
+  private final ArangoDriverPool pool;
   /**
    * Collection name.
    */
   private String collectionName;
+  /**
+   * Compiled schemas of all registered XSDs. (key: hashed namespace)
+   */
+  private final LoadingCache<String, Schema> schemaCache;
+  /**
+   * Properties loaded from file.
+   */
+  private final ArangoPropertyHandler properties;
+  /**
+   * Index profile for namespaces registered without index profile.
+   */
+  private final IndexProfile defaultIndexProfile;
+  /**
+   * Compiled index profiles of all registered XSDs. (key: hashed namespace)
+   */
+  private final LoadingCache<String, IndexProfile> indexProfileCache;
+  /**
+   * Registry of all fulltext indexes (legacy indexing per path).
+   */
+  private final IndexRegistry indexRegistry;
 
   /**
-   * Default constructor.
+   * Default constructor. Properties are loaded from file.
    */
   public ArangoDB() {
+    this(loadProperties());
+  }
+
+  /**
+   * Constructor using the given properties (e.g. another database).
+   *
+   * @param propertyHdlr Properties for accessing arangodb.
+   */
+  public ArangoDB(ArangoPropertyHandler propertyHdlr) {
+    properties = propertyHdlr;
+    List<String> searchFields = propertyHdlr.getSearchFields();
+    defaultIndexProfile = searchFields.isEmpty() ? IndexProfile.ALL : new IndexProfile(searchFields);
+
+    collectionName = propertyHdlr.getCollectionName();
+    schemaCache = Caffeine.newBuilder().build(hashValue -> XmlUtility.compileSchema(getRegisteredXsd(hashValue)));
+    indexProfileCache = Caffeine.newBuilder().build(this::loadIndexProfile);
+
+    pool = new ArangoDriverPool(propertyHdlr);
+    indexRegistry = new IndexRegistry(pool, collectionName, propertyHdlr.getIndexCreationDelay());
+    ArangoDriver driver;
+    try {
+      driver = pool.lease();
+    } catch (MetaStoreException ex) {
+      LOGGER.error("Error while instantiating driver for arango database!", ex);
+      return;
+    }
+    try {
+      initDatabase(driver, propertyHdlr);
+    } finally {
+      pool.release(driver);
+    }
+    // Computing the search text needs further drivers of the pool.
+    backfillSections();
+  }
+
+  /**
+   * Load properties from file.
+   *
+   * @return Properties.
+   */
+  private static ArangoPropertyHandler loadProperties() {
     ArangoPropertyHandler propertyHdlr = new ArangoPropertyHandler();
     propertyHdlr.loadProperty();
+    return propertyHdlr;
+  }
 
-    collectionName = propertyHdlr.getCollectionName();
+  /**
+   * Get properties.
+   *
+   * @return Properties.
+   */
+  public ArangoPropertyHandler getProperties() {
+    return properties;
+  }
+
+  /**
+   * Test if one fulltext index per JSON path is used instead of the
+   * consolidated search text.
+   *
+   * @return true for legacy indexing per path.
+   */
+  public boolean isPathIndexing() {
+    return properties.isPathIndexing();
+  }
+
+  /**
+   * Get index profile of a namespace. The profile is stored together with the
+   * xsd during registration. It is compiled only once and cached until the xsd
+   * is registered again.
+   *
+   * @param hashValue hashed value of the namespace.
+   * @return Index profile selecting the JSON paths to index.
+   * @throws MetaStoreException No XSD registered.
+   */
+  public IndexProfile getIndexProfile(String hashValue) throws MetaStoreException {
+    try {
+      return indexProfileCache.get(hashValue);
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof MetaStoreException) {
+        throw (MetaStoreException) e.getCause();
+      }
+      throw new MetaStoreException(e.getCause());
+    }
+  }
 
-    ArangoConfigure configure = new ArangoConfigure();
-    ArangoHost arangoHost = new ArangoHost(propertyHdlr.getUrl(), propertyHdlr.getIntPort());
-    configure.setArangoHost(arangoHost);
+  /**
+   * Load index profile stored with the xsd.
+   *
+   * @param hashValue hashed value of the namespace.
+   * @return Index profile (default profile if xsd was registered without
+   * profile).
+   * @throws MetaStoreException No XSD registered.
+   */
+  private IndexProfile loadIndexProfile(String hashValue) throws MetaStoreException {
+    Object indexPaths;
+    try {
+      indexPaths = pool.execute(driver -> driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class))
+              .getEntity().getAttribute(INDEX_PATHS_ATTRIBUTE);
+    } catch (ArangoException e) {
+      throw new MetaStoreException("No XSD registered for hash '" + hashValue + "'", e);
+    }
+    if (!(indexPaths instanceof Collection)) {
+      return defaultIndexProfile;
+    }
+    List<String> paths = new ArrayList<>();
+    for (Object path : (Collection<?>) indexPaths) {
+      paths.add(path.toString());
+    }
+    return new IndexProfile(paths);
+  }
 
-    configure.setDefaultDatabase(propertyHdlr.getDbName());
-    configure.setUser(propertyHdlr.getUsername());
-    configure.setPassword((null != propertyHdlr.getPassword() ? propertyHdlr.getPassword() : ""));
-    configure.init();
-    this.driver = new ArangoDriver(configure);
+  /**
+   * Create database and collection if not exists.
+   *
+   * @param driver Driver used for initialization.
+   * @param propertyHdlr Properties for accessing arangodb.
+   */
+  private void initDatabase(ArangoDriver driver, ArangoPropertyHandler propertyHdlr) {
     if (propertyHdlr.getDbDelete()) {
       try {
         LOGGER.warn("Database will be deleted! Set 'dbDelete' in DatabaseProperties.properties to false to avoid deleting database.");
@@ -120,18 +316,151 @@ public class ArangoDB {
         driver.createCollection(collectionName);
         LOGGER.info("Collection '" + collectionName + "' created!");
       }
+      ensureSectionIndex(driver);
+      ensureSearchIndex(driver);
+      indexRegistry.load(driver);
     } catch (ArangoException e1) {
       LOGGER.error("Error while instantiating driver for arango database!", e1);
     }
   }
 
+  /**
+   * Create persistent index used for looking up sections of a METS document if
+   * not exists. The order of the attributes allows to use the index also for
+   * queries filtering only for mainXmlHandler or mainXmlHandler and type.
+   *
+   * @param driver Driver used for initialization.
+   * @throws ArangoException Error while creating index.
+   */
+  private void ensureSectionIndex(ArangoDriver driver) throws ArangoException {
+    List<String> sectionIndexFields = Arrays.asList(SECTION_INDEX_FIELDS);
+    for (IndexEntity index : driver.getIndexes(collectionName).getIndexes()) {
+      if (index.getType() == IndexType.PERSISTENT && sectionIndexFields.equals(index.getFields())) {
+        LOGGER.debug("Index for sections already exists: '{}'", index.getId());
+        return;
+      }
+    }
+    IndexEntity index = driver.createIndex(collectionName, IndexType.PERSISTENT, false, false, SECTION_INDEX_FIELDS);
+    LOGGER.info("Index for sections created: '{}' on {}", index.getId(), sectionIndexFields);
+  }
+
+  /**
+   * Create fulltext index on the consolidated search text if not exists.
+   *
+   * @param driver Driver used for initialization.
+   * @throws ArangoException Error while creating index.
+   */
+  private void ensureSearchIndex(ArangoDriver driver) throws ArangoException {
+    List<String> searchIndexFields = Collections.singletonList(SEARCH_TEXT_ATTRIBUTE);
+    for (IndexEntity index : driver.getIndexes(collectionName).getIndexes()) {
+      if (index.getType() == IndexType.FULLTEXT && searchIndexFields.equals(index.getFields())) {
+        LOGGER.debug("Index for search already exists: '{}'", index.getId());
+        return;
+      }
+    }
+    IndexEntity index = driver.createFulltextIndex(collectionName, SEARCH_TEXT_ATTRIBUTE);
+    LOGGER.info("Index for search created: '{}' on {}", index.getId(), searchIndexFields);
+  }
+
+  /**
+   * Add attributes missing in sections stored by an older version. Otherwise
+   * these sections are never found: the search key is needed for paging all
+   * search results and the search text for the consolidated search.
+   */
+  private void backfillSections() {
+    try {
+      backfillSections(SEARCH_KEY_ATTRIBUTE, new String[]{"mainXmlHandler"},
+              section -> IdSetUtility.toKey(section.getString("mainXmlHandler")));
+      if (!isPathIndexing()) {
+        backfillSections(SEARCH_TEXT_ATTRIBUTE, new String[]{TYPE_ATTRIBUTE, JSON_ATTRIBUTE}, this::buildSearchText);
+      }
+    } catch (ArangoException | MetaStoreException e) {
+      LOGGER.error("Error while adding missing attributes to sections!", e);
+    }
+  }
+
+  /**
+   * Add a missing attribute to all sections stored by an older version. The
+   * sections are updated in batches until no section without this attribute
+   * is left.
+   *
+   * @param attribute Name of the missing attribute.
+   * @param sources Attributes of the section the value is computed from.
+   * Sections without these attributes are skipped.
+   * @param value Computes the value from the section (containing its key and
+   * the source attributes).
+   * @throws ArangoException Error while updating sections.
+   * @throws MetaStoreException No connection to database available.
+   */
+  private void backfillSections(String attribute, String[] sources, Function<JSONObject, Object> value)
+          throws ArangoException, MetaStoreException {
+    StringJoiner filter = new StringJoiner(" && ", " FILTER ", " && !HAS(doc, @attribute)");
+    List<String> keep = new ArrayList<>();
+    keep.add("_key");
+    Map<String, Object> selectVals = new HashMap<>();
+    for (int index = 0; index < sources.length; index++) {
+      filter.add("HAS(doc, @source" + index + ")");
+      selectVals.put("source" + index, sources[index]);
+      keep.add(sources[index]);
+    }
+    String selectQuery = "FOR doc IN " + collectionName + filter
+            + " LIMIT @batchSize RETURN KEEP(doc, @keep)";
+    String updateQuery = "FOR entry IN @entries UPDATE entry.key WITH entry.update IN " + collectionName;
+    selectVals.put("attribute", attribute);
+    selectVals.put("keep", keep);
+    selectVals.put("batchSize", BACKFILL_BATCH_SIZE);
+    long noOfSections = 0;
+    JSONArray sections;
+    do {
+      sections = new JSONArray(pool.execute(driver -> driver.executeAqlQueryJSON(selectQuery, selectVals, null)));
+      List<Map<String, Object>> entries = new ArrayList<>();
+      for (int index = 0; index < sections.length(); index++) {
+        JSONObject section = sections.getJSONObject(index);
+        Map<String, Object> update = new HashMap<>();
+        update.put(attribute, value.apply(section));
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("key", section.getString("_key"));
+        entry.put("update", update);
+        entries.add(entry);
+      }
+      if (!entries.isEmpty()) {
+        pool.execute(driver -> driver.executeAqlQueryJSON(updateQuery, Collections.singletonMap("entries", entries), null));
+        noOfSections += entries.size();
+      }
+    } while (sections.length() == BACKFILL_BATCH_SIZE);
+    if (noOfSections > 0) {
+      LOGGER.info("Attribute '{}' added to {} sections.", attribute, noOfSections);
+    }
+  }
+
+  /**
+   * Build search text of a section stored by an older version. The JSON of
+   * these sections may be stored as string.
+   *
+   * @param section Section containing its key, type and JSON.
+   * @return Search text or null if the search text can't be built (e.g. no
+   * XSD registered for the type).
+   */
+  private String buildSearchText(JSONObject section) {
+    try {
+      Object json = section.get(JSON_ATTRIBUTE);
+      JSONObject jsonObject = json instanceof JSONObject ? (JSONObject) json : new JSONObject(json.toString());
+      IndexProfile indexProfile = getIndexProfile(MetaStoreUtility.getHashValue(section.getString(TYPE_ATTRIBUTE)));
+      return indexProfile.buildSearchText(jsonObject);
+    } catch (MetaStoreException | JSONException e) {
+      LOGGER.warn("No search text for section '{}'! - {}", section.optString("_key"), e.getMessage());
+      return null;
+    }
+  }
+
   /**
    * Register XSD
    *
    * @param hashedKey hashed key
    * @param xsdString string containing xsd
    * @param type target namespace of the xsd
-   * @param prefix prefix of the given namespace (should be unique)
+   * @param prefix prefix of the given namespace (should be unique). The index
+   * profile configured for this prefix is stored together with the xsd.
    * @return Message
    * @throws MetaStoreException If something went wrong.
    */
@@ -140,17 +469,22 @@ public class ArangoDB {
     xmlForArango.addAttribute(PREFIX_ATTRIBUTE, prefix);
     xmlForArango.addAttribute(TYPE_ATTRIBUTE, type);
     xmlForArango.addAttribute(XSD_ATTRIBUTE, xsdString);
+    List<String> indexPaths = properties.getIndexProfile(prefix);
+    if (indexPaths != null) {
+      xmlForArango.addAttribute(INDEX_PATHS_ATTRIBUTE, indexPaths);
+    }
     xmlForArango.setDocumentKey(hashedKey);
     try {
-      synchronized (driver) {
-        driver.createDocument(collectionName, xmlForArango);
-      }
+      pool.execute(driver -> driver.createDocument(collectionName, xmlForArango));
     } catch (ArangoException e) {
       if (e.getMessage().equals("[1210] cannot create document, unique constraint violated")) {
         throw new MetaStoreException(e, StatusCode.CONFLICT.getStatusCode()); // conflict
       } else {
         throw new MetaStoreException(e);
       }
+    } finally {
+      schemaCache.invalidate(hashedKey);
+      indexProfileCache.invalidate(hashedKey);
     }
     return "Successfully registered";
   }
@@ -164,15 +498,32 @@ public class ArangoDB {
    */
   public String getRegisteredXsd(String hashValue) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class).getEntity()
-                .getAttribute(XSD_ATTRIBUTE).toString();
-      }
+      return pool.execute(driver -> driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class))
+              .getEntity().getAttribute(XSD_ATTRIBUTE).toString();
     } catch (ArangoException e) {
       throw new MetaStoreException("No XSD registered for hash '" + hashValue + "'", e);
     }
   }
 
+  /**
+   * Get compiled schema of xsd. The schema is compiled only once and cached
+   * until the xsd is registered again.
+   *
+   * @param hashValue hashed value
+   * @return Compiled schema.
+   * @throws MetaStoreException No XSD registered or XSD not valid.
+   */
+  public Schema getRegisteredSchema(String hashValue) throws MetaStoreException {
+    try {
+      return schemaCache.get(hashValue);
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof MetaStoreException) {
+        throw (MetaStoreException) e.getCause();
+      }
+      throw new MetaStoreException(e.getCause());
+    }
+  }
+
   /**
    * Get namespace of xsd
    *
@@ -182,15 +533,37 @@ public class ArangoDB {
    */
   public String getRegisteredXsdType(String hashValue) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class).getEntity()
-                .getAttribute(TYPE_ATTRIBUTE).toString();
-      }
+      return pool.execute(driver -> driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class))
+              .getEntity().getAttribute(TYPE_ATTRIBUTE).toString();
     } catch (ArangoException e) {
       throw new MetaStoreException("No type for XSD registered for hash '" + hashValue + "'", e);
     }
   }
 
+  /**
+   * Get namespaces of all xsds registered with the given prefixes.
+   *
+   * @param prefixes prefixes of the namespaces.
+   * @return namespaces (unknown prefixes are ignored).
+   * @throws MetaStoreException If something went wrong.
+   */
+  public Set<String> getRegisteredXsdTypes(Collection<String> prefixes) throws MetaStoreException {
+    String typeQuery = "FOR xsd IN " + collectionName + " FILTER xsd." + PREFIX_ATTRIBUTE + " IN @prefixes"
+            + " && xsd." + XSD_ATTRIBUTE + " != null RETURN DISTINCT xsd." + TYPE_ATTRIBUTE;
+    Map<String, Object> bindingVals = new HashMap<>();
+    bindingVals.put("prefixes", new ArrayList<>(prefixes));
+    Set<String> types = new HashSet<>();
+    try {
+      JSONArray result = new JSONArray(pool.execute(driver -> driver.executeAqlQueryJSON(typeQuery, bindingVals, null)));
+      for (int index = 0; index < result.length(); index++) {
+        types.add(result.getString(index));
+      }
+    } catch (ArangoException | JSONException e) {
+      throw new MetaStoreException(e);
+    }
+    return types;
+  }
+
   /**
    * Get prefix of xsd. Prefix should be unique.
    *
@@ -200,10 +573,8 @@ public class ArangoDB {
    */
   public String getRegisteredXsdPrefix(String hashValue) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class).getEntity()
-                .getAttribute(PREFIX_ATTRIBUTE).toString();
-      }
+      return pool.execute(driver -> driver.getDocument(collectionName + "/" + hashValue, BaseDocument.class))
+              .getEntity().getAttribute(PREFIX_ATTRIBUTE).toString();
     } catch (ArangoException e) {
       throw new MetaStoreException("No prefix of XSD registered for hash '" + hashValue + "'", e);
     }
@@ -225,9 +596,7 @@ public class ArangoDB {
     xmlForArango.setDocumentKey(hashedKey);
     String returnMsg;
     try {
-      synchronized (driver) {
-        driver.createDocument(collectionName, xmlForArango);
-      }
+      pool.execute(driver -> driver.createDocument(collectionName, xmlForArango));
       returnMsg = "Successfully Registered.";
     } catch (ArangoException e) {
       if (e.getMessage().equals("[1210] cannot create document, unique constraint violated")) {
@@ -239,6 +608,64 @@ public class ArangoDB {
     return returnMsg;
   }
 
+  /**
+   * Delete document.
+   *
+   * @param hashedKey hashed key of the document.
+   * @throws MetaStoreException Error while deleting.
+   */
+  public void deleteDocument(String hashedKey) throws MetaStoreException {
+    try {
+      pool.execute(driver -> driver.deleteDocument(collectionName + "/" + hashedKey));
+    } catch (ArangoException e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Write METS document and all its sections within one transaction. Either
+   * all documents are stored or none of them.
+   *
+   * @param hashedKey hashed key of unique id
+   * @param xmlString METS document
+   * @param type type of the METS document (namespace)
+   * @param pSections all nested sections of the METS document.
+   * @return Success otherwise an exception will be thrown.
+   * @throws MetaStoreException Error during storage. (Nothing is stored.)
+   */
+  public String storeMetsDocument(String hashedKey, String xmlString, String type, List<MetsArangoPOJO> pSections)
+          throws MetaStoreException {
+    StringBuilder mets = new StringBuilder("{");
+    appendAttribute(mets, "_key", hashedKey);
+    appendAttribute(mets, TYPE_ATTRIBUTE, type);
+    appendAttribute(mets, XML_ATTRIBUTE, xmlString);
+    mets.setCharAt(mets.length() - 1, '}');
+    StringJoiner sections = new StringJoiner(",", "[", "]");
+    for (MetsArangoPOJO section : pSections) {
+      sections.add(toRawDocument(section));
+    }
+    Map<String, Object> params = new HashMap<>();
+    params.put("collection", collectionName);
+    params.put("mets", mets.toString());
+    params.put("sections", sections.toString());
+    try {
+      pool.execute(driver -> {
+        TransactionEntity transaction = driver.createTransaction(STORE_METS_TRANSACTION);
+        transaction.addWriteCollection(collectionName);
+        transaction.setParams(params);
+        return driver.executeTransaction(transaction);
+      });
+    } catch (ArangoException e) {
+      if (e.getErrorNumber() == ERROR_UNIQUE_CONSTRAINT_VIOLATED) {
+        throw new MetaStoreException(e, StatusCode.CONFLICT.getStatusCode()); // Conflict
+      } else {
+        throw new MetaStoreException(e);
+      }
+    }
+    LOGGER.debug("METS document '{}' stored with {} section(s).", hashedKey, pSections.size());
+    return "Successfully Registered.";
+  }
+
   /**
    * Store raw json
    *
@@ -248,9 +675,7 @@ public class ArangoDB {
    */
   public void storeJSONRawDocument(String hashedKey, String finalString) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        driver.updateDocumentRaw(collectionName + "/" + hashedKey, finalString, null, false, null);
-      }
+      pool.execute(driver -> driver.updateDocumentRaw(collectionName + "/" + hashedKey, finalString, null, false, null));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
@@ -265,10 +690,7 @@ public class ArangoDB {
    */
   public JSONObject getJsonObject(String hashedKey) throws MetaStoreException {
     try {
-      String fetchData1;
-      synchronized (driver) {
-        fetchData1 = driver.getDocumentRaw(collectionName + "/" + hashedKey, null, null);
-      }
+      String fetchData1 = pool.execute(driver -> driver.getDocumentRaw(collectionName + "/" + hashedKey, null, null));
       return new JSONObject(fetchData1).getJSONObject("json");
 
     } catch (ArangoException | JSONException e) {
@@ -279,20 +701,22 @@ public class ArangoDB {
   }
 
   /**
-   * Apply indexes.
+   * Apply indexes. Only indexes not existing yet are created. This is done in
+   * the background, so the caller never waits for index creation.
    *
    * @param indexSet Set of indexes.
    */
   public void applyIndexes(Set<String> indexSet) {
-    for (String indSet : indexSet) {
-      try {
-        synchronized (driver) {
-          driver.createFulltextIndex(collectionName, indSet);
-        }
-      } catch (ArangoException e) {
-        LOGGER.error("Error while creating index for '" + indSet + "'!", e);
-      }
-    }
+    indexRegistry.requestIndexes(indexSet);
+  }
+
+  /**
+   * Release background resources. Indexes requested before are created
+   * first, so they are not lost.
+   */
+  public void shutdown() {
+    indexRegistry.flush();
+    indexRegistry.shutdown();
   }
 
   /**
@@ -305,22 +729,72 @@ public class ArangoDB {
   }
 
   /**
-   * Store XML document.
+   * Store XML document. All attributes (including type and JSON
+   * representation) are written within one request.
    *
    * @param metsPOJO Plain old java object representing METS file.
    * @return Message
    * @throws MetaStoreException If something went wrong
    */
   public String storeXmlDocument(MetsArangoPOJO metsPOJO) throws MetaStoreException {
-    DocumentEntity<MetsArangoPOJO> entity = null;
+    String rawDocument = toRawDocument(metsPOJO);
     try {
-      synchronized (driver) {
-        entity = driver.createDocument(collectionName, metsPOJO);
-      }
+      return pool.execute(driver -> driver.createDocumentRaw(collectionName, rawDocument, false)).getDocumentKey();
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
-    return entity.getDocumentKey();
+  }
+
+  /**
+   * Build JSON document for storing in database. The JSON representation of
+   * the section is embedded as JSON object (not as string) to make it
+   * accessible for indexes.
+   *
+   * @param metsPOJO Plain old java object representing METS file.
+   * @return JSON document as string.
+   */
+  private static String toRawDocument(MetsArangoPOJO metsPOJO) {
+    StringBuilder rawDocument = new StringBuilder("{");
+    appendAttribute(rawDocument, "id", metsPOJO.getId());
+    appendAttribute(rawDocument, "mainXmlHandler", metsPOJO.getMainXmlHandler());
+    if (metsPOJO.getMainXmlHandler() != null) {
+      appendAttribute(rawDocument, SEARCH_KEY_ATTRIBUTE, IdSetUtility.toKey(metsPOJO.getMainXmlHandler()));
+    }
+    appendAttribute(rawDocument, "sections", metsPOJO.getSections());
+    appendAttribute(rawDocument, TYPE_ATTRIBUTE, metsPOJO.getType());
+    appendAttribute(rawDocument, "xmlData", metsPOJO.getXmlData());
+    appendAttribute(rawDocument, SEARCH_TEXT_ATTRIBUTE, metsPOJO.getSearchText());
+    if (metsPOJO.getJson() != null) {
+      rawDocument.append("\"json\":").append(metsPOJO.getJson()).append(',');
+    }
+    if (rawDocument.length() > 1) {
+      rawDocument.setLength(rawDocument.length() - 1);
+    }
+    return rawDocument.append('}').toString();
+  }
+
+  /**
+   * Append string attribute to JSON document. Attributes with value null are
+   * skipped.
+   *
+   * @param pDocument JSON document (will be modified).
+   * @param pKey Name of the attribute.
+   * @param pValue Value of the attribute.
+   */
+  private static void appendAttribute(StringBuilder pDocument, String pKey, String pValue) {
+    if (pValue != null) {
+      pDocument.append(JSONObject.quote(pKey)).append(':').append(JSONObject.quote(pValue)).append(',');
+    }
+  }
+
+  /**
+   * Get paths of all existing fulltext indexes. The paths are held by the
+   * index registry, so no request to the database is needed.
+   *
+   * @return Paths with fulltext index.
+   */
+  public Set<String> getFulltextIndexPaths() {
+    return indexRegistry.getExistingIndexes();
   }
 
   /**
@@ -331,9 +805,7 @@ public class ArangoDB {
    */
   public IndexesEntity getIndexes() throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.getIndexes(collectionName);
-      }
+      return pool.execute(driver -> driver.getIndexes(collectionName));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
@@ -349,15 +821,121 @@ public class ArangoDB {
    */
   public DocumentCursor<ArangoDriver> applyFullTextSearch(String indexEntity, String text) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.executeSimpleFulltextWithDocuments(collectionName, indexEntity, "prefix:" + text, 0, 0, null,
-                null);
-      }
+      return pool.execute(driver -> driver.executeSimpleFulltextWithDocuments(collectionName, indexEntity,
+              "prefix:" + text, 0, 0, null, null));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
   }
 
+  /**
+   * Search in the consolidated search text of all sections.
+   *
+   * @param text search term
+   * @return Digital object IDs of all METS documents containing a matching
+   * section.
+   * @throws MetaStoreException If something went wrong
+   */
+  public Set<String> searchFullText(String text) throws MetaStoreException {
+    return searchFullText(SEARCH_TEXT_ATTRIBUTE, text, null);
+  }
+
+  /**
+   * Search in the consolidated search text of all sections of the given
+   * types.
+   *
+   * @param text search term
+   * @param types types (namespaces) of the sections or null for all types.
+   * @return Digital object IDs of all METS documents containing a matching
+   * section.
+   * @throws MetaStoreException If something went wrong
+   */
+  public Set<String> searchFullText(String text, Collection<String> types) throws MetaStoreException {
+    return searchFullText(SEARCH_TEXT_ATTRIBUTE, text, types);
+  }
+
+  /**
+   * Search in the consolidated search text of all sections of the given types
+   * returning only the digital object IDs following the given ID.
+   *
+   * @param text search term
+   * @param types types (namespaces) of the sections or null for all types.
+   * @param after return only IDs greater than this ID (null for all IDs).
+   * @param limit maximum number of IDs (0 for all IDs).
+   * @return Smallest digital object IDs of all METS documents containing a
+   * matching section.
+   * @throws MetaStoreException If something went wrong
+   */
+  public Set<String> searchFullText(String text, Collection<String> types, String after, int limit) throws MetaStoreException {
+    return searchFullText(SEARCH_TEXT_ATTRIBUTE, text, types, after, limit);
+  }
+
+  /**
+   * Search in one attribute covered by a fulltext index. The digital object
+   * IDs are projected by the query itself (no further lookup per hit).
+   *
+   * @param attribute attribute (path) covered by a fulltext index
+   * @param text search term
+   * @param types types (namespaces) of the sections or null for all types.
+   * @return Digital object IDs of all METS documents containing a matching
+   * section.
+   * @throws MetaStoreException If something went wrong
+   */
+  public Set<String> searchFullText(String attribute, String text, Collection<String> types) throws MetaStoreException {
+    return searchFullText(attribute, text, types, null, 0);
+  }
+
+  /**
+   * Search in one attribute covered by a fulltext index returning only the
+   * digital object IDs following the given ID. The cursor, the order and the
+   * limit are applied by the query on the search keys of the sections. AQL
+   * compares strings with ICU collation, but the search keys are hex
+   * encoded, so they are sorted in the same order as the IDs in Java (see
+   * IdSetUtility.ORDER).
+   *
+   * @param attribute attribute (path) covered by a fulltext index
+   * @param text search term
+   * @param types types (namespaces) of the sections or null for all types.
+   * @param after return only IDs greater than this ID (null for all IDs).
+   * @param limit maximum number of IDs (0 for all IDs).
+   * @return Smallest digital object IDs of all METS documents containing a
+   * matching section.
+   * @throws MetaStoreException If something went wrong
+   */
+  public Set<String> searchFullText(String attribute, String text, Collection<String> types, String after, int limit) throws MetaStoreException {
+    String searchQuery = "FOR doc IN FULLTEXT(" + collectionName + ", @attribute, @query)"
+            + (types == null ? "" : " FILTER doc.type IN @types")
+            + (after == null ? "" : " FILTER doc." + SEARCH_KEY_ATTRIBUTE + " > @after")
+            + " COLLECT key = doc." + SEARCH_KEY_ATTRIBUTE + ", id = doc.mainXmlHandler"
+            + " SORT key"
+            + (limit > 0 ? " LIMIT @limit" : "")
+            + " RETURN id";
+    Map<String, Object> bindingVals = new HashMap<>();
+    bindingVals.put("attribute", attribute);
+    bindingVals.put("query", "prefix:" + text);
+    if (types != null) {
+      bindingVals.put("types", new ArrayList<>(types));
+    }
+    if (after != null) {
+      bindingVals.put("after", IdSetUtility.toKey(after));
+    }
+    if (limit > 0) {
+      bindingVals.put("limit", limit);
+    }
+    Set<String> digitalObjectIds = new LinkedHashSet<>();
+    try {
+      JSONArray result = new JSONArray(pool.execute(driver -> driver.executeAqlQueryJSON(searchQuery, bindingVals, null)));
+      for (int index = 0; index < result.length(); index++) {
+        if (!result.isNull(index)) {
+          digitalObjectIds.add(result.getString(index));
+        }
+      }
+    } catch (ArangoException | JSONException e) {
+      throw new MetaStoreException(e);
+    }
+    return digitalObjectIds;
+  }
+
   /**
    * Get XML document
    *
@@ -367,15 +945,117 @@ public class ArangoDB {
    */
   public String getXMLData(String hashedValue) throws MetaStoreException {
     try {
-      synchronized (driver) {
-        return driver.getDocument(collectionName + "/" + hashedValue, BaseDocument.class).getEntity()
-                .getAttribute(XML_ATTRIBUTE).toString();
-      }
+      return pool.execute(driver -> driver.getDocument(collectionName + "/" + hashedValue, BaseDocument.class))
+              .getEntity().getAttribute(XML_ATTRIBUTE).toString();
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
   }
 
+  /**
+   * Get METS document together with the xml data of all its sections. Only
+   * the needed attributes are transferred within one request.
+   *
+   * @param hashedValue hashed value of the digital object ID.
+   * @param pUniqueId digital object ID.
+   * @return METS document with all sections.
+   * @throws MetaStoreException No document found or something went wrong.
+   */
+  public StoredMetsDocument getMetsDocumentWithSections(String hashedValue, String pUniqueId) throws MetaStoreException {
+    return getMetsDocumentWithSections(hashedValue, pUniqueId, false);
+  }
+
+  /**
+   * Get METS document together with the xml data of all its sections. If the
+   * JSON rendering is requested and already persisted, only the rendering is
+   * transferred (no xml, no sections).
+   *
+   * @param hashedValue hashed value of the digital object ID.
+   * @param pUniqueId digital object ID.
+   * @param pJson Fetch persisted JSON rendering if available.
+   * @return METS document with all sections or with JSON rendering.
+   * @throws MetaStoreException No document found or something went wrong.
+   */
+  public StoredMetsDocument getMetsDocumentWithSections(String hashedValue, String pUniqueId, boolean pJson)
+          throws MetaStoreException {
+    LOGGER.debug("getMetsDocumentWithSections: " + pUniqueId);
+    String metsQuery = "FOR mets IN " + collectionName + " FILTER mets._key==@key"
+            + " LET rendered = @json && mets." + METS_JSON_ATTRIBUTE + " != null"
+            + " RETURN {rev: mets._rev, type: mets.type, metsJson: rendered ? mets." + METS_JSON_ATTRIBUTE + " : null,"
+            + " xml: rendered ? null : mets.xml, sections: rendered ? [] : (FOR doc IN " + collectionName
+            + " FILTER doc.mainXmlHandler==@mainXmlHandler && doc.xmlData != null"
+            + " RETURN {id: doc.id, xmlData: doc.xmlData})}";
+    Map<String, Object> bindingVals = new HashMap<>();
+    bindingVals.put("key", hashedValue);
+    bindingVals.put("mainXmlHandler", pUniqueId);
+    bindingVals.put("json", pJson);
+    JSONArray result;
+    try {
+      result = new JSONArray(pool.execute(driver -> driver.executeAqlQueryJSON(metsQuery, bindingVals, null)));
+    } catch (ArangoException | JSONException e) {
+      throw new MetaStoreException(e);
+    }
+    if (result.length() == 0) {
+      throw new MetaStoreException("No document found for id '" + pUniqueId + "'!", StatusCode.NOT_FOUND.getStatusCode());
+    }
+    JSONObject mets = result.getJSONObject(0);
+    Map<String, String> sections = new LinkedHashMap<>();
+    JSONArray allSections = mets.getJSONArray("sections");
+    for (int index = 0; index < allSections.length(); index++) {
+      JSONObject section = allSections.getJSONObject(index);
+      sections.put(section.optString("id"), section.getString("xmlData"));
+    }
+    String metsJson = mets.isNull(METS_JSON_ATTRIBUTE) ? null : mets.getString(METS_JSON_ATTRIBUTE);
+    return new StoredMetsDocument(hashedValue, mets.optString("rev"), mets.optString(TYPE_ATTRIBUTE),
+            mets.optString(XML_ATTRIBUTE), sections, metsJson);
+  }
+
+  /**
+   * Persist JSON rendering of a METS document. The rendering is only stored
+   * if the METS document wasn't changed (e.g. invalidated by an update of a
+   * section) since it was read.
+   *
+   * @param hashedValue hashed value of the digital object ID.
+   * @param pRevision revision of the METS document the rendering is based on.
+   * @param pMetsJson JSON rendering of the whole METS document.
+   * @return true if stored, false if the METS document was changed meanwhile.
+   * @throws MetaStoreException something went wrong.
+   */
+  public boolean storeMetsJson(String hashedValue, String pRevision, String pMetsJson) throws MetaStoreException {
+    String updateQuery = "FOR mets IN " + collectionName + " FILTER mets._key==@key && mets._rev==@rev"
+            + " UPDATE mets WITH {" + METS_JSON_ATTRIBUTE + ": @metsJson} IN " + collectionName + " RETURN NEW._key";
+    Map<String, Object> bindingVals = new HashMap<>();
+    bindingVals.put("key", hashedValue);
+    bindingVals.put("rev", pRevision);
+    bindingVals.put("metsJson", pMetsJson);
+    try {
+      return new JSONArray(pool.execute(driver -> driver.executeAqlQueryJSON(updateQuery, bindingVals, null))).length() > 0;
+    } catch (ArangoException | JSONException e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Remove persisted JSON rendering of a METS document. Has to be called
+   * after a section of the document was changed.
+   *
+   * @param hashedValue hashed value of the digital object ID.
+   * @throws MetaStoreException something went wrong.
+   */
+  public void invalidateMetsJson(String hashedValue) throws MetaStoreException {
+    // Updates the revision even if no rendering exists. So a rendering based
+    // on older sections which is persisted concurrently gets rejected.
+    String updateQuery = "FOR mets IN " + collectionName + " FILTER mets._key==@key"
+            + " UPDATE mets WITH {" + METS_JSON_ATTRIBUTE + ": null} IN " + collectionName + " OPTIONS {keepNull: false}";
+    Map<String, Object> bindingVals = new HashMap<>();
+    bindingVals.put("key", hashedValue);
+    try {
+      pool.execute(driver -> driver.executeAqlQueryJSON(updateQuery, bindingVals, null));
+    } catch (ArangoException e) {
+      throw new MetaStoreException(e.getMessage(), StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
+    }
+  }
+
   /**
    * Get all child documents
    *
@@ -390,9 +1070,7 @@ public class ArangoDB {
     Map<String, Object> bindingVals = new HashMap<>();
     bindingVals.put("mainXmlHandler", pUniqueId);
     try {
-      synchronized (driver) {
-        return driver.executeDocumentQuery(allIDDocQuery, bindingVals, null, BaseDocument.class);
-      }
+      return pool.execute(driver -> driver.executeDocumentQuery(allIDDocQuery, bindingVals, null, BaseDocument.class));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
@@ -415,9 +1093,7 @@ public class ArangoDB {
     bindingVals.put("mainXmlHandler", uniqueID);
     bindingVals.put("type", nameSpace);
     try {
-      synchronized (driver) {
-        return driver.executeDocumentQuery(allIDDocQuery, bindingVals, null, BaseDocument.class);
-      }
+      return pool.execute(driver -> driver.executeDocumentQuery(allIDDocQuery, bindingVals, null, BaseDocument.class));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
@@ -457,10 +1133,7 @@ public class ArangoDB {
   public String getDigitalObjectIdForDocument(String hashedKey) throws MetaStoreException {
     String digitalObjectId;
     try {
-      String fetchData1;
-      synchronized (driver) {
-        fetchData1 = driver.getDocumentRaw(collectionName + "/" + hashedKey, null, null);
-      }
+      String fetchData1 = pool.execute(driver -> driver.getDocumentRaw(collectionName + "/" + hashedKey, null, null));
       digitalObjectId = new JSONObject(fetchData1).getString("mainXmlHandler").toString();
     } catch (Exception e) {
       LOGGER.error("Excepiton :" + e.getMessage());
@@ -493,9 +1166,8 @@ public class ArangoDB {
     allIDDocQuery.append(" return doc");
 
     try {
-      synchronized (driver) {
-        return driver.executeDocumentQuery(allIDDocQuery.toString(), bindingVals, null, BaseDocument.class);
-      }
+      return pool.execute(driver -> driver.executeDocumentQuery(allIDDocQuery.toString(), bindingVals, null,
+              BaseDocument.class));
     } catch (ArangoException e) {
       throw new MetaStoreException(e);
     }
@@ -525,9 +1197,7 @@ public class ArangoDB {
     bindingVals.put("xmlData", pSectionDocument);
     bindingVals.put("json", "");
     try {
-      synchronized (driver) {
-        driver.executeDocumentQuery(updateQuery, bindingVals, null, BaseDocument.class);
-      }
+      pool.execute(driver -> driver.executeDocumentQuery(updateQuery, bindingVals, null, BaseDocument.class));
     } catch (ArangoException e) {
       throw new MetaStoreException(e.getMessage(), StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
     }
@@ -537,10 +1207,10 @@ public class ArangoDB {
     bindingVals2.put("mainXmlHandler", collectionName + "/" + documentToUpdateKey);
     bindingVals2.put("arrayData", arrayData);
     try {
-      synchronized (driver) {
+      pool.execute(driver -> {
         driver.updateDocumentRaw(collectionName + "/" + documentToUpdateKey, finalStr, null, false, null);
-        driver.executeAqlQuery(updateArray, bindingVals2, null, BaseDocument.class);
-      }
+        return driver.executeAqlQuery(updateArray, bindingVals2, null, BaseDocument.class);
+      });
     } catch (ArangoException e) {
       throw new MetaStoreException(e.getMessage(), StatusCode.INTERNAL_SERVER_ERROR.getStatusCode());
     }
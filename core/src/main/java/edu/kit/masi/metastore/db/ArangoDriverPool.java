@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.db;
+
+import com.arangodb.ArangoConfigure;
+import com.arangodb.ArangoDriver;
+import com.arangodb.ArangoException;
+import com.arangodb.ArangoHost;
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import edu.kit.masi.metastore.utils.ArangoPropertyHandler;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of drivers for accessing arangodb. Each driver is leased for exactly one
+ * request and returned afterwards, so that requests of different threads are
+ * no longer serialized by one global lock.
+ *
+ * @author hartmann-v
+ */
+public class ArangoDriverPool {
+
+  /**
+   * Logger for debugging purposes.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArangoDriverPool.class);
+
+  /**
+   * Callback executed with a leased driver.
+   *
+   * @param <T> Type of the result.
+   */
+  @FunctionalInterface
+  public interface DriverCallback<T> {
+
+    /**
+     * Execute request with leased driver.
+     *
+     * @param pDriver Driver leased for this request only.
+     * @return Result of the request.
+     * @throws ArangoException Error while accessing database.
+     */
+    T doWithDriver(ArangoDriver pDriver) throws ArangoException;
+  }
+  /**
+   * All drivers currently not leased.
+   */
+  private final BlockingQueue<ArangoDriver> idleDrivers;
+  /**
+   * Number of drivers managed by this pool.
+   */
+  private final int poolSize;
+  /**
+   * Maximum time (in milliseconds) to wait for a free driver.
+   */
+  private final long leaseTimeout;
+
+  /**
+   * Constructor creating all drivers.
+   *
+   * @param pProperties Properties for accessing arangodb.
+   */
+  public ArangoDriverPool(ArangoPropertyHandler pProperties) {
+    poolSize = pProperties.getConnectionPoolSize();
+    leaseTimeout = pProperties.getConnectionLeaseTimeout();
+    idleDrivers = new ArrayBlockingQueue<>(poolSize);
+    for (int index = 0; index < poolSize; index++) {
+      idleDrivers.add(createDriver(pProperties));
+    }
+    LOGGER.info("Pool with {} driver(s) for arango database created.", poolSize);
+  }
+
+  /**
+   * Create a new driver with its own configuration.
+   *
+   * @param pProperties Properties for accessing arangodb.
+   * @return New driver.
+   */
+  private static ArangoDriver createDriver(ArangoPropertyHandler pProperties) {
+    ArangoConfigure configure = new ArangoConfigure();
+    ArangoHost arangoHost = new ArangoHost(pProperties.getUrl(), pProperties.getIntPort());
+    configure.setArangoHost(arangoHost);
+
+    configure.setDefaultDatabase(pProperties.getDbName());
+    configure.setUser(pProperties.getUsername());
+    configure.setPassword((null != pProperties.getPassword() ? pProperties.getPassword() : ""));
+    configure.init();
+    return new ArangoDriver(configure);
+  }
+
+  /**
+   * Lease a driver. The driver has to be released via
+   * {@link #release(ArangoDriver)} afterwards.
+   *
+   * @return Driver for exclusive use.
+   * @throws MetaStoreException No driver available within lease timeout.
+   */
+  public ArangoDriver lease() throws MetaStoreException {
+    try {
+      ArangoDriver driver = idleDrivers.poll(leaseTimeout, TimeUnit.MILLISECONDS);
+      if (driver == null) {
+        throw new MetaStoreException("No connection to database available after " + leaseTimeout + " ms!",
+                StatusCode.SERVICE_UNAVAILABLE.getStatusCode());
+      }
+      return driver;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MetaStoreException("Interrupted while waiting for connection to database!", ex);
+    }
+  }
+
+  /**
+   * Return leased driver to pool.
+   *
+   * @param pDriver Driver leased before.
+   */
+  public void release(ArangoDriver pDriver) {
+    if (pDriver != null && !idleDrivers.offer(pDriver)) {
+      LOGGER.error("Driver released twice or not leased from this pool!");
+    }
+  }
+
+  /**
+   * Execute request with a leased driver. The driver is released afterwards
+   * even if the request fails.
+   *
+   * @param <T> Type of the result.
+   * @param pCallback Request to execute.
+   * @return Result of the request.
+   * @throws ArangoException Error while accessing database.
+   * @throws MetaStoreException No driver available.
+   */
+  public <T> T execute(DriverCallback<T> pCallback) throws ArangoException, MetaStoreException {
+    ArangoDriver driver = lease();
+    try {
+      return pCallback.doWithDriver(driver);
+    } finally {
+      release(driver);
+    }
+  }
+
+  /**
+   * Get number of drivers managed by this pool.
+   *
+   * @return Size of the pool.
+   */
+  public int getPoolSize() {
+    return poolSize;
+  }
+}
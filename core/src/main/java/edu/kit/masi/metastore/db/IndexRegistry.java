@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.db;
+
+import com.arangodb.ArangoDriver;
+import com.arangodb.ArangoException;
+import com.arangodb.entity.IndexEntity;
+import com.arangodb.entity.IndexType;
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of all fulltext indexes of the collection. The existing indexes are
+ * read once from the database. Paths without index are collected and created
+ * in the background after a short delay, so that all paths requested within
+ * this delay are created by one run and writes never wait for index creation.
+ *
+ * @author hartmann-v
+ */
+public class IndexRegistry {
+
+  /**
+   * Logger for debugging purposes.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(IndexRegistry.class);
+  /**
+   * Pool of drivers for accessing data from arangodb.
+   */
+  private final ArangoDriverPool pool;
+  /**
+   * Collection name.
+   */
+  private final String collectionName;
+  /**
+   * Delay (in milliseconds) before creating requested indexes.
+   */
+  private final long creationDelay;
+  /**
+   * Paths with existing fulltext index.
+   */
+  private final Set<String> existingIndexes = ConcurrentHashMap.newKeySet();
+  /**
+   * Paths waiting for creation of a fulltext index.
+   */
+  private final Set<String> pendingIndexes = ConcurrentHashMap.newKeySet();
+  /**
+   * Creation of pending indexes is already scheduled.
+   */
+  private final AtomicBoolean creationScheduled = new AtomicBoolean(false);
+  /**
+   * Executor creating indexes in the background.
+   */
+  private final ScheduledExecutorService executor;
+
+  /**
+   * Constructor.
+   *
+   * @param pPool Pool of drivers for accessing data from arangodb.
+   * @param pCollectionName Collection name.
+   * @param pCreationDelay Delay (in milliseconds) before creating requested
+   * indexes.
+   */
+  public IndexRegistry(ArangoDriverPool pPool, String pCollectionName, long pCreationDelay) {
+    pool = pPool;
+    collectionName = pCollectionName;
+    creationDelay = Math.max(0, pCreationDelay);
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "IndexRegistry-" + pCollectionName);
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    executor = scheduler;
+  }
+
+  /**
+   * Load all existing fulltext indexes of the collection.
+   *
+   * @param pDriver Driver used for initialization.
+   * @throws ArangoException Error while reading indexes.
+   */
+  public void load(ArangoDriver pDriver) throws ArangoException {
+    for (IndexEntity index : pDriver.getIndexes(collectionName).getIndexes()) {
+      register(index);
+    }
+    LOGGER.debug("{} fulltext index(es) found in collection '{}'.", existingIndexes.size(), collectionName);
+  }
+
+  /**
+   * Get all paths with existing fulltext index.
+   *
+   * @return Paths (unmodifiable snapshot).
+   */
+  public Set<String> getExistingIndexes() {
+    return Collections.unmodifiableSet(new HashSet<>(existingIndexes));
+  }
+
+  /**
+   * Request fulltext indexes for the given paths. Indexes not existing yet
+   * are created in the background.
+   *
+   * @param pPaths Paths which should be indexed.
+   */
+  public void requestIndexes(Collection<String> pPaths) {
+    boolean newPath = false;
+    for (String path : pPaths) {
+      if (!existingIndexes.contains(path) && pendingIndexes.add(path)) {
+        newPath = true;
+      }
+    }
+    if (newPath && creationScheduled.compareAndSet(false, true)) {
+      executor.schedule(this::createPendingIndexes, creationDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Create all pending indexes immediately and wait until they are created.
+   */
+  public void flush() {
+    try {
+      executor.submit(this::createPendingIndexes).get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      LOGGER.error("Error while creating indexes!", ex.getCause());
+    }
+  }
+
+  /**
+   * Stop creating indexes in the background. Pending indexes are discarded.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Create all pending indexes. Executed by the background thread only.
+   */
+  private void createPendingIndexes() {
+    // Paths requested from now on need another run.
+    creationScheduled.set(false);
+    List<String> paths = new ArrayList<>(pendingIndexes);
+    LOGGER.debug("Create {} fulltext index(es).", paths.size());
+    for (String path : paths) {
+      try {
+        pool.execute(driver -> driver.createFulltextIndex(collectionName, path));
+        existingIndexes.add(path);
+      } catch (ArangoException | MetaStoreException e) {
+        LOGGER.error("Error while creating index for '" + path + "'!", e);
+      } finally {
+        pendingIndexes.remove(path);
+      }
+    }
+  }
+
+  /**
+   * Register index if it is a fulltext index.
+   *
+   * @param pIndex Index.
+   */
+  private void register(IndexEntity pIndex) {
+    if (pIndex.getType() == IndexType.FULLTEXT && pIndex.getFields() != null && !pIndex.getFields().isEmpty()) {
+      existingIndexes.add(pIndex.getFields().get(0));
+    }
+  }
+}
@@ -37,6 +37,18 @@ public class MetsArangoPOJO {
    * Section ID of the object.
    */
 	private String id;
+  /**
+   * Type (namespace) of the section.
+   */
+	private String type;
+  /**
+   * Content of section as JSON string.
+   */
+	private String json;
+  /**
+   * Consolidated search text of the section.
+   */
+	private String searchText;
 	/**
    * Get section name.
    * @return section name.
@@ -93,5 +105,47 @@ public class MetsArangoPOJO {
 	public void setXmlData(String xmlData) {
 		this.xmlData = xmlData;
 	}
+  /**
+   * Get type (namespace) of section.
+   * @return Type of section.
+   */
+	public String getType() {
+		return type;
+	}
+  /**
+   * Set type (namespace) of section.
+   * @param type Type of section.
+   */
+	public void setType(String type) {
+		this.type = type;
+	}
+  /**
+   * Get content of section as JSON string.
+   * @return Content of section as JSON.
+   */
+	public String getJson() {
+		return json;
+	}
+  /**
+   * Set content of section as JSON string.
+   * @param json Content of section as JSON.
+   */
+	public void setJson(String json) {
+		this.json = json;
+	}
+  /**
+   * Get consolidated search text of the section.
+   * @return Selected values of the section.
+   */
+	public String getSearchText() {
+		return searchText;
+	}
+  /**
+   * Set consolidated search text of the section.
+   * @param searchText Selected values of the section.
+   */
+	public void setSearchText(String searchText) {
+		this.searchText = searchText;
+	}
 
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.model;
+
+import org.json.JSONObject;
+import org.w3c.dom.Node;
+
+/**
+ * Nested section prepared for storing. Holds the document written to the
+ * database and everything needed for indexing it afterwards.
+ *
+ * @author hartmann-v
+ */
+public class PreparedSection {
+
+  /**
+   * Document stored in database.
+   */
+  private final MetsArangoPOJO document;
+  /**
+   * JSON representation of the section.
+   */
+  private final JSONObject json;
+  /**
+   * Prefix registered for the namespace of the section.
+   */
+  private final String prefix;
+  /**
+   * Root node of the (already parsed) section.
+   */
+  private final Node rootNode;
+
+  /**
+   * Constructor.
+   *
+   * @param pDocument Document stored in database.
+   * @param pJson JSON representation of the section.
+   * @param pPrefix Prefix registered for the namespace of the section.
+   * @param pRootNode Root node of the (already parsed) section.
+   */
+  public PreparedSection(MetsArangoPOJO pDocument, JSONObject pJson, String pPrefix, Node pRootNode) {
+    document = pDocument;
+    json = pJson;
+    prefix = pPrefix;
+    rootNode = pRootNode;
+  }
+
+  /**
+   * Get document stored in database.
+   *
+   * @return the document
+   */
+  public MetsArangoPOJO getDocument() {
+    return document;
+  }
+
+  /**
+   * Get JSON representation of the section.
+   *
+   * @return the json
+   */
+  public JSONObject getJson() {
+    return json;
+  }
+
+  /**
+   * Get prefix registered for the namespace of the section.
+   *
+   * @return the prefix
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Get root node of the (already parsed) section.
+   *
+   * @return the rootNode
+   */
+  public Node getRootNode() {
+    return rootNode;
+  }
+}
@@ -33,9 +33,18 @@ public class SectionDocument {
    */
   private String sectionId;
   /**
-   * Root node holding the xml data of this section.
+   * Root node holding the xml data of this section. (null if section was
+   * read as stream)
    */
   private Node rootNode;
+  /**
+   * Namespace of the section.
+   */
+  private String type;
+  /**
+   * Serialized xml data of this section. (null if section is part of a DOM)
+   */
+  private String xmlData;
 
   /**
    * Constructor.
@@ -48,6 +57,22 @@ public class SectionDocument {
     this.digitalObjectId = pDigitalObjectId;
     this.sectionId = sectionId;
     this.rootNode = rootNode;
+    this.type = rootNode.getNamespaceURI();
+  }
+
+  /**
+   * Constructor for sections read as stream.
+   *
+   * @param pDigitalObjectId ID of the mets file.
+   * @param sectionId Section ID
+   * @param type Namespace of the section.
+   * @param xmlData Serialized xml data of the section.
+   */
+  public SectionDocument(String pDigitalObjectId, String sectionId, String type, String xmlData) {
+    this.digitalObjectId = pDigitalObjectId;
+    this.sectionId = sectionId;
+    this.type = type;
+    this.xmlData = xmlData;
   }
 
   /**
@@ -81,6 +106,15 @@ public class SectionDocument {
    * @return  get namespace.
    */
   public String getType() {
-    return rootNode.getNamespaceURI();
+    return type;
+  }
+
+  /**
+   * Get serialized xml data of section.
+   *
+   * @return the xml data (null if section is part of a DOM)
+   */
+  public String getXmlData() {
+    return xmlData;
   }
 }
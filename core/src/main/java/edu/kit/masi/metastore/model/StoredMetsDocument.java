@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.model;
+
+import java.util.Map;
+
+/**
+ * METS document as stored in database including the xml data of all its
+ * sections.
+ *
+ * @author hartmann-v
+ */
+public class StoredMetsDocument {
+
+  /**
+   * Key of the document.
+   */
+  private final String key;
+  /**
+   * Revision of the document when it was read.
+   */
+  private final String revision;
+  /**
+   * Type (namespace) of the document.
+   */
+  private final String type;
+  /**
+   * METS document as stored during ingest.
+   */
+  private final String xml;
+  /**
+   * XML data of all sections. (key: section ID)
+   */
+  private final Map<String, String> sections;
+  /**
+   * Persisted JSON rendering of the whole document. (may be null)
+   */
+  private final String metsJson;
+
+  /**
+   * Constructor.
+   *
+   * @param pKey Key of the document.
+   * @param pRevision Revision of the document when it was read.
+   * @param pType Type (namespace) of the document.
+   * @param pXml METS document as stored during ingest.
+   * @param pSections XML data of all sections. (key: section ID)
+   * @param pMetsJson Persisted JSON rendering of the whole document. (may be
+   * null)
+   */
+  public StoredMetsDocument(String pKey, String pRevision, String pType, String pXml, Map<String, String> pSections,
+          String pMetsJson) {
+    key = pKey;
+    revision = pRevision;
+    type = pType;
+    xml = pXml;
+    sections = pSections;
+    metsJson = pMetsJson;
+  }
+
+  /**
+   * Get key of the document.
+   *
+   * @return the key
+   */
+  public String getKey() {
+    return key;
+  }
+
+  /**
+   * Get revision of the document when it was read.
+   *
+   * @return the revision
+   */
+  public String getRevision() {
+    return revision;
+  }
+
+  /**
+   * Get type (namespace) of the document.
+   *
+   * @return the type
+   */
+  public String getType() {
+    return type;
+  }
+
+  /**
+   * Get METS document as stored during ingest.
+   *
+   * @return the xml
+   */
+  public String getXml() {
+    return xml;
+  }
+
+  /**
+   * Get xml data of all sections.
+   *
+   * @return Map with section ID as key and xml data as value.
+   */
+  public Map<String, String> getSections() {
+    return sections;
+  }
+
+  /**
+   * Get persisted JSON rendering of the whole document.
+   *
+   * @return JSON or null if not rendered yet (or not requested).
+   */
+  public String getMetsJson() {
+    return metsJson;
+  }
+}
@@ -15,13 +15,25 @@
  */
 package edu.kit.masi.metastore.utils;
 
+import java.util.ArrayList;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Data object holding all properties for accessing arangodb.
  * @author vaibhav
  */
 public class ArangoPropertyHandler {
+  /**
+   * Logger.
+   */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ArangoPropertyHandler.class);
   /**
    * Collection name.
    */
@@ -50,6 +62,94 @@ public class ArangoPropertyHandler {
    * Flag for testing purposes.
    */
 	private boolean dbDelete;
+  /**
+   * Default number of connections to the database.
+   */
+	public static final int DEFAULT_CONNECTION_POOL_SIZE = 8;
+  /**
+   * Default time (in milliseconds) waiting for a free connection.
+   */
+	public static final long DEFAULT_CONNECTION_LEASE_TIMEOUT = 30000;
+  /**
+   * Number of connections to the database.
+   */
+	private int connectionPoolSize = DEFAULT_CONNECTION_POOL_SIZE;
+  /**
+   * Time (in milliseconds) waiting for a free connection.
+   */
+	private long connectionLeaseTimeout = DEFAULT_CONNECTION_LEASE_TIMEOUT;
+  /**
+   * Default size (in characters) of METS documents which are split as stream.
+   */
+	public static final long DEFAULT_STREAMING_THRESHOLD = 10485760;
+  /**
+   * Default maximum size (in characters) of one section.
+   */
+	public static final long DEFAULT_MAX_SECTION_SIZE = 52428800;
+  /**
+   * METS documents larger than this size (in characters) are split as stream.
+   */
+	private long streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+  /**
+   * Maximum size (in characters) of one section.
+   */
+	private long maxSectionSize = DEFAULT_MAX_SECTION_SIZE;
+  /**
+   * Number of threads validating sections in parallel.
+   */
+	private int validationThreads = Runtime.getRuntime().availableProcessors();
+  /**
+   * Default number of threads preparing and indexing sections.
+   */
+	public static final int DEFAULT_INGEST_THREADS = 8;
+  /**
+   * Number of threads preparing and indexing sections.
+   */
+	private int ingestThreads = DEFAULT_INGEST_THREADS;
+  /**
+   * Default delay (in milliseconds) before creating requested indexes.
+   */
+	public static final long DEFAULT_INDEX_CREATION_DELAY = 1000;
+  /**
+   * Delay (in milliseconds) before creating requested indexes.
+   */
+	private long indexCreationDelay = DEFAULT_INDEX_CREATION_DELAY;
+  /**
+   * Default number of threads querying fulltext indexes.
+   */
+	public static final int DEFAULT_SEARCH_THREADS = 8;
+  /**
+   * Number of threads querying fulltext indexes.
+   */
+	private int searchThreads = DEFAULT_SEARCH_THREADS;
+  /**
+   * Default deadline (in milliseconds) for queries of one search.
+   */
+	public static final long DEFAULT_SEARCH_TIMEOUT = 10000;
+  /**
+   * Deadline (in milliseconds) for queries of one search.
+   */
+	private long searchTimeout = DEFAULT_SEARCH_TIMEOUT;
+  /**
+   * Search index mode: one fulltext index on the consolidated search text.
+   */
+	public static final String SEARCH_INDEX_MODE_CONSOLIDATED = "consolidated";
+  /**
+   * Search index mode: one fulltext index per JSON path (legacy).
+   */
+	public static final String SEARCH_INDEX_MODE_PATH = "path";
+  /**
+   * Search index mode.
+   */
+	private String searchIndexMode = SEARCH_INDEX_MODE_CONSOLIDATED;
+  /**
+   * JSON paths indexed for prefixes without index profile (empty for all).
+   */
+	private List<String> searchFields = Collections.emptyList();
+  /**
+   * Index profiles: JSON paths indexed per prefix.
+   */
+	private final Map<String, List<String>> indexProfiles = new HashMap<>();
   /**
    * Get port number.
    * @return Port number.
@@ -96,7 +196,7 @@ public class ArangoPropertyHandler {
    * Set database name.
    * @param dbName Database name.
    */
-	private void setDbName(String dbName) {
+	public void setDbName(String dbName) {
 		this.dbName = dbName;
 	}
   /**
@@ -156,6 +256,227 @@ public class ArangoPropertyHandler {
 	private void setDbDelete(boolean dbDelete) {
 		this.dbDelete = dbDelete;
 	}
+  /**
+   * Get number of connections to the database.
+   * @return Number of connections.
+   */
+	public int getConnectionPoolSize() {
+		return connectionPoolSize;
+	}
+  /**
+   * Set number of connections to the database.
+   * @param connectionPoolSize Number of connections (at least 1).
+   */
+	private void setConnectionPoolSize(String connectionPoolSize) {
+		if (connectionPoolSize != null) {
+			this.connectionPoolSize = Math.max(1, Integer.parseInt(connectionPoolSize.trim()));
+		}
+	}
+  /**
+   * Get time waiting for a free connection.
+   * @return Timeout in milliseconds.
+   */
+	public long getConnectionLeaseTimeout() {
+		return connectionLeaseTimeout;
+	}
+  /**
+   * Set time waiting for a free connection.
+   * @param connectionLeaseTimeout Timeout in milliseconds.
+   */
+	private void setConnectionLeaseTimeout(String connectionLeaseTimeout) {
+		if (connectionLeaseTimeout != null) {
+			this.connectionLeaseTimeout = Long.parseLong(connectionLeaseTimeout.trim());
+		}
+	}
+  /**
+   * Get size of METS documents which are split as stream.
+   * @return Size in characters.
+   */
+	public long getStreamingThreshold() {
+		return streamingThreshold;
+	}
+  /**
+   * Set size of METS documents which are split as stream.
+   * @param streamingThreshold Size in characters.
+   */
+	private void setStreamingThreshold(String streamingThreshold) {
+		if (streamingThreshold != null) {
+			this.streamingThreshold = Long.parseLong(streamingThreshold.trim());
+		}
+	}
+  /**
+   * Get maximum size of one section.
+   * @return Size in characters.
+   */
+	public long getMaxSectionSize() {
+		return maxSectionSize;
+	}
+  /**
+   * Set maximum size of one section.
+   * @param maxSectionSize Size in characters.
+   */
+	private void setMaxSectionSize(String maxSectionSize) {
+		if (maxSectionSize != null) {
+			this.maxSectionSize = Long.parseLong(maxSectionSize.trim());
+		}
+	}
+  /**
+   * Get number of threads validating sections in parallel.
+   * @return Number of threads.
+   */
+	public int getValidationThreads() {
+		return validationThreads;
+	}
+  /**
+   * Set number of threads validating sections in parallel.
+   * @param validationThreads Number of threads (at least 1).
+   */
+	private void setValidationThreads(String validationThreads) {
+		if (validationThreads != null) {
+			this.validationThreads = Math.max(1, Integer.parseInt(validationThreads.trim()));
+		}
+	}
+  /**
+   * Get number of threads preparing and indexing sections.
+   * @return Number of threads.
+   */
+	public int getIngestThreads() {
+		return ingestThreads;
+	}
+  /**
+   * Set number of threads preparing and indexing sections.
+   * @param ingestThreads Number of threads (at least 1).
+   */
+	private void setIngestThreads(String ingestThreads) {
+		if (ingestThreads != null) {
+			this.ingestThreads = Math.max(1, Integer.parseInt(ingestThreads.trim()));
+		}
+	}
+  /**
+   * Get search index mode.
+   * @return SEARCH_INDEX_MODE_CONSOLIDATED or SEARCH_INDEX_MODE_PATH.
+   */
+	public String getSearchIndexMode() {
+		return searchIndexMode;
+	}
+  /**
+   * Test if one fulltext index per JSON path is used (legacy).
+   * @return true for search index mode 'path'.
+   */
+	public boolean isPathIndexing() {
+		return SEARCH_INDEX_MODE_PATH.equals(searchIndexMode);
+	}
+  /**
+   * Set search index mode. Unknown modes are logged and the default mode is
+   * kept, so the following properties are still loaded.
+   * @param searchIndexMode 'consolidated' or 'path'.
+   */
+	private void setSearchIndexMode(String searchIndexMode) {
+		if (searchIndexMode != null) {
+			String mode = searchIndexMode.trim();
+			if (!SEARCH_INDEX_MODE_PATH.equalsIgnoreCase(mode) && !SEARCH_INDEX_MODE_CONSOLIDATED.equalsIgnoreCase(mode)) {
+				LOGGER.error("Unknown search index mode '{}'! Use default mode '{}' instead.", mode, this.searchIndexMode);
+				return;
+			}
+			this.searchIndexMode = mode.toLowerCase();
+		}
+	}
+  /**
+   * Get JSON paths indexed for prefixes without index profile.
+   * @return Paths (empty for all values).
+   */
+	public List<String> getSearchFields() {
+		return searchFields;
+	}
+  /**
+   * Set JSON paths indexed for prefixes without index profile.
+   * @param searchFields Comma separated list of paths.
+   */
+	private void setSearchFields(String searchFields) {
+		if (searchFields != null) {
+			this.searchFields = splitPaths(searchFields);
+		}
+	}
+  /**
+   * Get delay before creating requested indexes. All indexes requested
+   * within this delay are created together.
+   * @return Delay in milliseconds.
+   */
+	public long getIndexCreationDelay() {
+		return indexCreationDelay;
+	}
+  /**
+   * Set delay before creating requested indexes.
+   * @param indexCreationDelay Delay in milliseconds.
+   */
+	private void setIndexCreationDelay(String indexCreationDelay) {
+		if (indexCreationDelay != null) {
+			this.indexCreationDelay = Math.max(0, Long.parseLong(indexCreationDelay.trim()));
+		}
+	}
+  /**
+   * Get number of threads querying fulltext indexes concurrently.
+   * @return Number of threads.
+   */
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+  /**
+   * Set number of threads querying fulltext indexes concurrently.
+   * @param searchThreads Number of threads (at least 1).
+   */
+	private void setSearchThreads(String searchThreads) {
+		if (searchThreads != null) {
+			this.searchThreads = Math.max(1, Integer.parseInt(searchThreads.trim()));
+		}
+	}
+  /**
+   * Get deadline for the queries of one search.
+   * @return Deadline in milliseconds.
+   */
+	public long getSearchTimeout() {
+		return searchTimeout;
+	}
+  /**
+   * Set deadline for the queries of one search.
+   * @param searchTimeout Deadline in milliseconds.
+   */
+	private void setSearchTimeout(String searchTimeout) {
+		if (searchTimeout != null) {
+			this.searchTimeout = Math.max(0, Long.parseLong(searchTimeout.trim()));
+		}
+	}
+  /**
+   * Get index profile of a prefix.
+   * @param prefix Prefix of the namespace.
+   * @return JSON paths indexed for this prefix or null if no profile is defined.
+   */
+	public List<String> getIndexProfile(String prefix) {
+		return indexProfiles.get(prefix);
+	}
+  /**
+   * Set index profiles.
+   * @param profiles Comma separated list of paths per prefix.
+   */
+	private void setIndexProfiles(Properties profiles) {
+		for (String prefix : profiles.stringPropertyNames()) {
+			indexProfiles.put(prefix, splitPaths(profiles.getProperty(prefix)));
+		}
+	}
+  /**
+   * Split comma separated list of paths.
+   * @param paths Comma separated list of paths.
+   * @return Paths without blanks.
+   */
+	private static List<String> splitPaths(String paths) {
+		List<String> fields = new ArrayList<>();
+		for (String field : paths.split(",")) {
+			if (!field.trim().isEmpty()) {
+				fields.add(field.trim());
+			}
+		}
+		return Collections.unmodifiableList(fields);
+	}
   /** 
    * Load all properties from file.
    */
@@ -170,6 +491,25 @@ public class ArangoPropertyHandler {
 			setUrl(prop.getProperty("arangoIP"));
 			setPort(prop.getProperty("arangoPort"));
 			setDbDelete(prop.getProperty("dbDelete").equalsIgnoreCase("true")?true:false);
+			setConnectionPoolSize(prop.getProperty("connectionPoolSize"));
+			setConnectionLeaseTimeout(prop.getProperty("connectionLeaseTimeout"));
+			setStreamingThreshold(prop.getProperty("streamingThreshold"));
+			setMaxSectionSize(prop.getProperty("maxSectionSize"));
+			setValidationThreads(prop.getProperty("validationThreads"));
+			setIngestThreads(prop.getProperty("ingestThreads"));
+			setSearchIndexMode(prop.getProperty("searchIndexMode"));
+			setSearchFields(prop.getProperty("searchFields"));
+			setIndexCreationDelay(prop.getProperty("indexCreationDelay"));
+			setSearchThreads(prop.getProperty("searchThreads"));
+			setSearchTimeout(prop.getProperty("searchTimeout"));
+			// Index profiles are optional.
+			try (InputStream profiles = getClass().getResourceAsStream("/IndexProfiles.properties")) {
+				if (profiles != null) {
+					Properties profileProp = new Properties();
+					profileProp.load(profiles);
+					setIndexProfiles(profileProp);
+				}
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
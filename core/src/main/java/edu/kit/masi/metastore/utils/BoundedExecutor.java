@@ -0,0 +1,274 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded worker pool shared by all requests. The number of threads is read
+ * from the given property on first use. If the queue is full the caller
+ * executes the task itself or (for tasks with a deadline) the task is
+ * rejected.
+ *
+ * @author hartmann-v
+ */
+public class BoundedExecutor {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedExecutor.class);
+  /**
+   * Maximum number of waiting tasks per thread.
+   */
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+  /**
+   * Name of the pool (used for threads and messages).
+   */
+  private final String name;
+  /**
+   * Property holding the number of threads.
+   */
+  private final ToIntFunction<ArangoPropertyHandler> noOfThreadsProperty;
+  /**
+   * The caller executes the task itself if the queue is full. Otherwise the
+   * task is rejected.
+   */
+  private final boolean callerRuns;
+  /**
+   * Pool. (Pool is created on first use.)
+   */
+  private volatile ThreadPoolExecutor pool;
+
+  /**
+   * Constructor. The caller executes the task itself if the queue is full.
+   *
+   * @param pName Name of the pool (e.g. 'validation').
+   * @param pNoOfThreadsProperty Property holding the number of threads.
+   */
+  public BoundedExecutor(String pName, ToIntFunction<ArangoPropertyHandler> pNoOfThreadsProperty) {
+    this(pName, pNoOfThreadsProperty, true);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pName Name of the pool (e.g. 'search').
+   * @param pNoOfThreadsProperty Property holding the number of threads.
+   * @param pCallerRuns The caller executes the task itself if the queue is
+   * full. Otherwise the task is rejected (see submit).
+   */
+  public BoundedExecutor(String pName, ToIntFunction<ArangoPropertyHandler> pNoOfThreadsProperty,
+          boolean pCallerRuns) {
+    name = pName;
+    noOfThreadsProperty = pNoOfThreadsProperty;
+    callerRuns = pCallerRuns;
+  }
+
+  /**
+   * Get pool. Pool is created with the configured number of threads on first
+   * use.
+   *
+   * @return Pool.
+   */
+  private ThreadPoolExecutor getPool() {
+    ThreadPoolExecutor result = pool;
+    if (result == null) {
+      synchronized (this) {
+        result = pool;
+        if (result == null) {
+          ArangoPropertyHandler properties = new ArangoPropertyHandler();
+          properties.loadProperty();
+          int noOfThreads = noOfThreadsProperty.applyAsInt(properties);
+          LOGGER.debug("Create pool with {} thread(s) for {}.", noOfThreads, name);
+          result = new ThreadPoolExecutor(noOfThreads, noOfThreads, 60, TimeUnit.SECONDS,
+                  new ArrayBlockingQueue<>(noOfThreads * QUEUE_SIZE_PER_THREAD), new NamedThreadFactory(name),
+                  callerRuns ? new ThreadPoolExecutor.CallerRunsPolicy() : new ThreadPoolExecutor.AbortPolicy());
+          result.allowCoreThreadTimeOut(true);
+          pool = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get number of threads of the pool.
+   *
+   * @return Number of threads.
+   */
+  public int getNoOfThreads() {
+    return getPool().getMaximumPoolSize();
+  }
+
+  /**
+   * Submit task. If the task is rejected (queue of a rejecting pool is full)
+   * the request fails immediately.
+   *
+   * @param <T> Type of the result.
+   * @param pTask Task.
+   * @return Future of the task.
+   * @throws MetaStoreException Task was rejected (SERVICE_UNAVAILABLE).
+   */
+  public <T> Future<T> submit(Callable<T> pTask) throws MetaStoreException {
+    try {
+      return getPool().submit(pTask);
+    } catch (RejectedExecutionException ex) {
+      LOGGER.warn("Task rejected by pool for {}.", name);
+      throw new MetaStoreException("Too many concurrent requests for " + name + "!", ex,
+              StatusCode.SERVICE_UNAVAILABLE.getStatusCode());
+    }
+  }
+
+  /**
+   * Submit all tasks. (If the queue is full the caller executes the task
+   * itself.)
+   *
+   * @param <T> Type of the results.
+   * @param pTasks All tasks.
+   * @return Futures in the order of the tasks.
+   */
+  public <T> List<Future<T>> submitAll(List<Callable<T>> pTasks) {
+    ThreadPoolExecutor executor = getPool();
+    List<Future<T>> futures = new ArrayList<>(pTasks.size());
+    for (Callable<T> task : pTasks) {
+      futures.add(executor.submit(task));
+    }
+    return futures;
+  }
+
+  /**
+   * Wait for the result of a task.
+   *
+   * @param <T> Type of the result.
+   * @param pFuture Future of the task.
+   * @return Result of the task.
+   * @throws MetaStoreException Error of the task or waiting was interrupted.
+   */
+  public <T> T getResult(Future<T> pFuture) throws MetaStoreException {
+    try {
+      return pFuture.get();
+    } catch (InterruptedException ex) {
+      throw interrupted(ex);
+    } catch (ExecutionException ex) {
+      throw toMetaStoreException(ex);
+    }
+  }
+
+  /**
+   * Wait for the result of a task until the deadline is reached.
+   *
+   * @param <T> Type of the result.
+   * @param pFuture Future of the task.
+   * @param pDeadline Deadline (System.nanoTime()).
+   * @return Result of the task.
+   * @throws MetaStoreException Error of the task or waiting was interrupted.
+   * @throws TimeoutException Task is not finished before deadline.
+   */
+  public <T> T getResult(Future<T> pFuture, long pDeadline) throws MetaStoreException, TimeoutException {
+    try {
+      return pFuture.get(Math.max(0, pDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      throw interrupted(ex);
+    } catch (ExecutionException ex) {
+      throw toMetaStoreException(ex);
+    }
+  }
+
+  /**
+   * Shut down pool. Running tasks are finished. A new pool is created on next
+   * use.
+   */
+  public synchronized void shutdown() {
+    if (pool != null) {
+      LOGGER.debug("Shut down pool for {}.", name);
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  /**
+   * Create exception for interrupted waiting. The interrupt flag is restored.
+   *
+   * @param pCause Cause.
+   * @return Exception.
+   */
+  private MetaStoreException interrupted(InterruptedException pCause) {
+    Thread.currentThread().interrupt();
+    return new MetaStoreException("Waiting for " + name + " was interrupted!", pCause,
+            StatusCode.SERVICE_UNAVAILABLE.getStatusCode());
+  }
+
+  /**
+   * Get error of a failed task.
+   *
+   * @param pException Exception thrown by Future.get.
+   * @return Error of the task.
+   */
+  private static MetaStoreException toMetaStoreException(ExecutionException pException) {
+    if (pException.getCause() instanceof MetaStoreException) {
+      return (MetaStoreException) pException.getCause();
+    }
+    return new MetaStoreException(pException.getCause());
+  }
+
+  /**
+   * Creates daemon threads named by the pool.
+   */
+  private static class NamedThreadFactory implements ThreadFactory {
+
+    /**
+     * Prefix of the thread names.
+     */
+    private final String prefix;
+    /**
+     * Number of the next thread.
+     */
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    /**
+     * Constructor.
+     *
+     * @param pName Name of the pool.
+     */
+    NamedThreadFactory(String pName) {
+      prefix = "masi-" + pName + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable pRunnable) {
+      Thread thread = new Thread(pRunnable, prefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Combine sets of IDs (e.g. hits of several search terms). The sets are held
+ * as sorted arrays without duplicates, so they are compact and combined by
+ * merging in linear time. All sets are sorted by code points (see ORDER),
+ * which is the order of the search keys (see toKey) in the database.
+ *
+ * @author hartmann-v
+ */
+public class IdSetUtility {
+
+  /**
+   * Empty set.
+   */
+  private static final String[] EMPTY = new String[0];
+  /**
+   * Order of all sets: IDs are compared by code points. This is the same
+   * order as the byte order of the UTF-8 encoded IDs and therefore as the
+   * order of their search keys.
+   */
+  public static final Comparator<String> ORDER = IdSetUtility::compare;
+  /**
+   * Digits of the search keys.
+   */
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * Utility class.
+   */
+  private IdSetUtility() {
+  }
+
+  /**
+   * Get search key of an ID. The key is the hex encoded UTF-8 representation
+   * of the ID. It contains only the characters [0-9a-f], so the database
+   * (comparing strings by ICU collation) sorts the keys in the same order as
+   * ORDER sorts the IDs.
+   *
+   * @param pId ID.
+   * @return Search key of the ID.
+   */
+  public static String toKey(String pId) {
+    StringBuilder key = new StringBuilder();
+    for (byte b : pId.getBytes(StandardCharsets.UTF_8)) {
+      key.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Compare two IDs by code points.
+   *
+   * @param pFirst ID.
+   * @param pSecond ID.
+   * @return Negative, zero or positive value if the first ID is less, equal or
+   * greater than the second ID.
+   */
+  public static int compare(String pFirst, String pSecond) {
+    int first = 0;
+    int second = 0;
+    while (first < pFirst.length() && second < pSecond.length()) {
+      int firstCodePoint = pFirst.codePointAt(first);
+      int secondCodePoint = pSecond.codePointAt(second);
+      if (firstCodePoint != secondCodePoint) {
+        return Integer.compare(firstCodePoint, secondCodePoint);
+      }
+      first += Character.charCount(firstCodePoint);
+      second += Character.charCount(secondCodePoint);
+    }
+    return Integer.compare(pFirst.length() - first, pSecond.length() - second);
+  }
+
+  /**
+   * Create sorted set.
+   *
+   * @param pIds IDs (may contain duplicates).
+   * @return Sorted array without duplicates.
+   */
+  public static String[] toSortedSet(Collection<String> pIds) {
+    String[] ids = pIds.toArray(new String[pIds.size()]);
+    Arrays.sort(ids, ORDER);
+    int size = 0;
+    for (int index = 0; index < ids.length; index++) {
+      if (size == 0 || !ids[index].equals(ids[size - 1])) {
+        ids[size++] = ids[index];
+      }
+    }
+    return size == ids.length ? ids : Arrays.copyOf(ids, size);
+  }
+
+  /**
+   * Get one page of a sorted set. The IDs are compared with ORDER like all
+   * sets of this class, so the last ID of a page is a stable cursor for the
+   * next page.
+   *
+   * @param pSortedSet Sorted set.
+   * @param pAfter Return only IDs greater than this ID (null for first page).
+   * @param pLimit Maximum number of IDs (0 for all IDs).
+   * @return Sorted set containing the smallest IDs following the given ID.
+   */
+  public static String[] page(String[] pSortedSet, String pAfter, int pLimit) {
+    int from = 0;
+    if (pAfter != null) {
+      int position = Arrays.binarySearch(pSortedSet, pAfter, ORDER);
+      from = position >= 0 ? position + 1 : -position - 1;
+    }
+    int to = pLimit > 0 ? Math.min(pSortedSet.length, from + pLimit) : pSortedSet.length;
+    if (from == 0 && to == pSortedSet.length) {
+      return pSortedSet;
+    }
+    return Arrays.copyOfRange(pSortedSet, from, to);
+  }
+
+  /**
+   * Intersect sorted sets. The smallest sets are intersected first, so the
+   * intermediate results are as small as possible.
+   *
+   * @param pSets Sorted sets.
+   * @return Sorted set containing IDs contained in all sets.
+   */
+  public static String[] intersect(List<String[]> pSets) {
+    if (pSets.isEmpty()) {
+      return EMPTY;
+    }
+    List<String[]> sets = new ArrayList<>(pSets);
+    sets.sort(Comparator.comparingInt(set -> set.length));
+    String[] result = sets.get(0);
+    for (int index = 1; index < sets.size() && result.length > 0; index++) {
+      result = intersect(result, sets.get(index));
+    }
+    return result;
+  }
+
+  /**
+   * Unite sorted sets. All sets are merged at once (k-way merge), so each ID
+   * is copied only once.
+   *
+   * @param pSets Sorted sets.
+   * @return Sorted set containing IDs contained in any set.
+   */
+  public static String[] unite(List<String[]> pSets) {
+    if (pSets.isEmpty()) {
+      return EMPTY;
+    }
+    if (pSets.size() == 1) {
+      return pSets.get(0);
+    }
+    int totalSize = 0;
+    // Position of each set ordered by its current ID.
+    PriorityQueue<int[]> positions = new PriorityQueue<>(pSets.size(),
+            (first, second) -> compare(pSets.get(first[0])[first[1]], pSets.get(second[0])[second[1]]));
+    for (int set = 0; set < pSets.size(); set++) {
+      totalSize += pSets.get(set).length;
+      if (pSets.get(set).length > 0) {
+        positions.add(new int[]{set, 0});
+      }
+    }
+    String[] result = new String[totalSize];
+    int size = 0;
+    while (!positions.isEmpty()) {
+      int[] position = positions.poll();
+      String[] set = pSets.get(position[0]);
+      String id = set[position[1]];
+      if (size == 0 || !id.equals(result[size - 1])) {
+        result[size++] = id;
+      }
+      position[1]++;
+      if (position[1] < set.length) {
+        positions.add(position);
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * Intersect two sorted sets.
+   *
+   * @param pFirst Sorted set.
+   * @param pSecond Sorted set.
+   * @return Sorted set containing IDs contained in both sets.
+   */
+  private static String[] intersect(String[] pFirst, String[] pSecond) {
+    String[] result = new String[Math.min(pFirst.length, pSecond.length)];
+    int size = 0;
+    int first = 0;
+    int second = 0;
+    while (first < pFirst.length && second < pSecond.length) {
+      int compare = compare(pFirst[first], pSecond[second]);
+      if (compare == 0) {
+        result[size++] = pFirst[first];
+        first++;
+        second++;
+      } else if (compare < 0) {
+        first++;
+      } else {
+        second++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+}
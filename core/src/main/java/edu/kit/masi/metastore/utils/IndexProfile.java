@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Index profile selecting the JSON paths of a section which are indexed. The
+ * selected values are used for the consolidated search text and (legacy) for
+ * one fulltext index per path.
+ *
+ * Paths are relative to the JSON representation of a section and separated by
+ * '.' (e.g. 'bmd:basemetadata.bmd:digitalObject.bmd:label'). Arrays are
+ * transparent. Inside a name '*' matches any characters (e.g. '*:label'). The
+ * name '**' matches any number of levels. A path selects the matching value
+ * and all values below. Namespace declarations are never selected.
+ *
+ * The paths are compiled once into a state machine. Only subtrees which may
+ * contain a selected path are visited.
+ *
+ * @author hartmann-v
+ */
+public class IndexProfile {
+
+  /**
+   * Profile selecting all values.
+   */
+  public static final IndexProfile ALL = new IndexProfile(Collections.singletonList("**"));
+  /**
+   * Separator for path elements.
+   */
+  private static final String PATH_SEPARATOR = ".";
+  /**
+   * Prefix of index paths.
+   */
+  private static final String INDEX_PATH_PREFIX = "json.";
+  /**
+   * Prefix of namespace declarations.
+   */
+  private static final String XMLNS = "xmlns";
+  /**
+   * Name matching any number of levels.
+   */
+  private static final String ANY_LEVELS = "**";
+  /**
+   * Matcher for each state. (null: any number of levels or end of path)
+   */
+  private final Pattern[] stateMatchers;
+  /**
+   * States reached at the end of a path.
+   */
+  private final BitSet acceptingStates = new BitSet();
+  /**
+   * States matching any number of levels.
+   */
+  private final BitSet anyLevelStates = new BitSet();
+  /**
+   * Active states at the root of a section.
+   */
+  private final BitSet startStates = new BitSet();
+  /**
+   * Paths of the profile.
+   */
+  private final List<String> paths;
+
+  /**
+   * Constructor.
+   *
+   * @param pPaths Paths to select. (empty for no values)
+   */
+  public IndexProfile(List<String> pPaths) {
+    paths = Collections.unmodifiableList(new ArrayList<>(pPaths));
+    List<Pattern> matchers = new ArrayList<>();
+    BitSet initial = new BitSet();
+    for (String path : paths) {
+      initial.set(matchers.size());
+      for (String name : path.split(Pattern.quote(PATH_SEPARATOR))) {
+        if (name.equals(ANY_LEVELS)) {
+          anyLevelStates.set(matchers.size());
+          matchers.add(null);
+        } else {
+          matchers.add(compileName(name));
+        }
+      }
+      acceptingStates.set(matchers.size());
+      matchers.add(null);
+    }
+    stateMatchers = matchers.toArray(new Pattern[matchers.size()]);
+    startStates.or(closure(initial));
+  }
+
+  /**
+   * Get paths of the profile.
+   *
+   * @return Paths.
+   */
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  /**
+   * Get paths of all selected values for indexing each path separately. Only
+   * paths below the root element are returned.
+   *
+   * @param pJson JSON representation of a section.
+   * @return Paths of the selected values (starting with 'json.').
+   */
+  public Set<String> getIndexPaths(JSONObject pJson) {
+    Set<String> indexPaths = new HashSet<>();
+    collect(pJson, "", startStates, (path, value) -> {
+      if (path.contains(PATH_SEPARATOR)) {
+        indexPaths.add(INDEX_PATH_PREFIX + path);
+      }
+    });
+    return indexPaths;
+  }
+
+  /**
+   * Build consolidated search text of a section.
+   *
+   * @param pJson JSON representation of a section.
+   * @return All selected text and number values separated by blanks (each
+   * value only once).
+   */
+  public String buildSearchText(JSONObject pJson) {
+    Set<String> values = new LinkedHashSet<>();
+    collect(pJson, "", startStates, (path, value) -> {
+      if (value instanceof String || value instanceof Number) {
+        String text = value.toString().trim();
+        if (!text.isEmpty()) {
+          values.add(text);
+        }
+      }
+    });
+    return String.join(" ", values);
+  }
+
+  /**
+   * Visit all selected values below the given path.
+   *
+   * @param pValue JSON value.
+   * @param pPath Path of the value.
+   * @param pStates Active states. (null if value is selected)
+   * @param pVisitor Visitor for selected values.
+   */
+  private void collect(Object pValue, String pPath, BitSet pStates, ValueVisitor pVisitor) {
+    if (pValue instanceof JSONObject) {
+      JSONObject object = (JSONObject) pValue;
+      Iterator<?> keys = object.keys();
+      while (keys.hasNext()) {
+        String key = (String) keys.next();
+        if (key.equals(XMLNS) || key.startsWith(XMLNS + ":")) {
+          continue;
+        }
+        BitSet states = pStates == null ? null : next(pStates, key);
+        if (states == null || !states.isEmpty()) {
+          String path = pPath.isEmpty() ? key : pPath + PATH_SEPARATOR + key;
+          collect(object.get(key), path, states, pVisitor);
+        }
+      }
+    } else if (pValue instanceof JSONArray) {
+      JSONArray array = (JSONArray) pValue;
+      for (int index = 0; index < array.length(); index++) {
+        collect(array.get(index), pPath, pStates, pVisitor);
+      }
+    } else if (pStates == null) {
+      pVisitor.visit(pPath, pValue);
+    }
+  }
+
+  /**
+   * Get states after reading the given name.
+   *
+   * @param pStates Active states.
+   * @param pName Name of the child.
+   * @return Active states for the child, empty set if no path matches or null
+   * if the child is selected.
+   */
+  private BitSet next(BitSet pStates, String pName) {
+    BitSet reached = new BitSet();
+    for (int state = pStates.nextSetBit(0); state >= 0; state = pStates.nextSetBit(state + 1)) {
+      if (anyLevelStates.get(state)) {
+        reached.set(state);
+      } else if (stateMatchers[state] != null && stateMatchers[state].matcher(pName).matches()) {
+        reached.set(state + 1);
+      }
+    }
+    reached = closure(reached);
+    return reached.intersects(acceptingStates) ? null : reached;
+  }
+
+  /**
+   * Add all states reachable without reading a name ('**' may match no
+   * level).
+   *
+   * @param pStates States.
+   * @return States including all reachable states.
+   */
+  private BitSet closure(BitSet pStates) {
+    BitSet states = (BitSet) pStates.clone();
+    for (int state = states.nextSetBit(0); state >= 0; state = states.nextSetBit(state + 1)) {
+      if (anyLevelStates.get(state)) {
+        states.set(state + 1);
+      }
+    }
+    return states;
+  }
+
+  /**
+   * Compile name with wildcards to a regular expression.
+   *
+   * @param pName Name ('*' matches any characters).
+   * @return Pattern.
+   */
+  private static Pattern compileName(String pName) {
+    StringBuilder regex = new StringBuilder();
+    String[] parts = pName.split("\\*", -1);
+    for (int index = 0; index < parts.length; index++) {
+      if (index > 0) {
+        regex.append(".*");
+      }
+      if (!parts[index].isEmpty()) {
+        regex.append(Pattern.quote(parts[index]));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  /**
+   * Visitor for selected values.
+   */
+  @FunctionalInterface
+  private interface ValueVisitor {
+
+    /**
+     * Visit selected value.
+     *
+     * @param pPath Path of the value.
+     * @param pValue Value (no object or array).
+     */
+    void visit(String pPath, Object pValue);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Executes the tasks of one ingest (preparing and indexing sections)
+ * concurrently on a bounded worker pool shared by all requests. The size of
+ * the pool is configured by 'ingestThreads'.
+ *
+ * @author hartmann-v
+ */
+public class IngestExecutor {
+
+  /**
+   * Pool shared by all ingests.
+   */
+  private static final BoundedExecutor EXECUTOR = new BoundedExecutor("ingest",
+          ArangoPropertyHandler::getIngestThreads);
+
+  /**
+   * Task of an ingest.
+   *
+   * @param <T> Type of the result.
+   */
+  @FunctionalInterface
+  public interface IngestTask<T> {
+
+    /**
+     * Execute task.
+     *
+     * @return Result of the task.
+     * @throws MetaStoreException An error occurred.
+     */
+    T execute() throws MetaStoreException;
+  }
+
+  /**
+   * Execute all tasks concurrently and wait until all of them are finished.
+   * If tasks fail the error of the first failing task (in order of the list)
+   * is thrown.
+   *
+   * @param <T> Type of the results.
+   * @param pTasks All tasks.
+   * @return Results in the order of the tasks.
+   * @throws MetaStoreException Error of the first failing task.
+   */
+  public static <T> List<T> executeAll(List<IngestTask<T>> pTasks) throws MetaStoreException {
+    List<T> results = new ArrayList<>(pTasks.size());
+    if (pTasks.size() <= 1) {
+      // Nothing to parallelize.
+      for (IngestTask<T> task : pTasks) {
+        results.add(task.execute());
+      }
+      return results;
+    }
+    List<Callable<T>> callables = new ArrayList<>(pTasks.size());
+    for (IngestTask<T> task : pTasks) {
+      callables.add(task::execute);
+    }
+    // Join: wait for all tasks even if one of them fails. (If waiting is
+    // interrupted all remaining waits fail immediately.)
+    MetaStoreException firstError = null;
+    for (Future<T> future : EXECUTOR.submitAll(callables)) {
+      try {
+        results.add(EXECUTOR.getResult(future));
+      } catch (MetaStoreException ex) {
+        if (firstError == null) {
+          firstError = ex;
+        }
+      }
+    }
+    if (firstError != null) {
+      throw firstError;
+    }
+    return results;
+  }
+
+  /**
+   * Shut down the pool.
+   */
+  public static void shutdown() {
+    EXECUTOR.shutdown();
+  }
+}
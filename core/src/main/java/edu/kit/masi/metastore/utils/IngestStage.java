@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stages of the ingest pipeline. Each stage counts how often it was executed
+ * since startup (or last reset). Storing a METS document should parse the
+ * XML text only once. (Large METS documents are not parsed into a DOM but read
+ * as stream twice: for validation and for splitting.)
+ *
+ * @author hartmann-v
+ */
+public enum IngestStage {
+  /**
+   * Parsing XML text.
+   */
+  PARSE,
+  /**
+   * Validating document against XSD.
+   */
+  VALIDATION,
+  /**
+   * Serializing XML node to text.
+   */
+  SERIALIZATION,
+  /**
+   * Transforming XML via XSLT.
+   */
+  TRANSFORMATION,
+  /**
+   * Converting XML to JSON.
+   */
+  JSON_CONVERSION;
+
+  /**
+   * Number of executions.
+   */
+  private final AtomicLong counter = new AtomicLong();
+
+  /**
+   * Count one execution of this stage.
+   */
+  public void increment() {
+    counter.incrementAndGet();
+  }
+
+  /**
+   * Get number of executions of this stage.
+   *
+   * @return Number of executions.
+   */
+  public long getCount() {
+    return counter.get();
+  }
+
+  /**
+   * Reset counters of all stages.
+   */
+  public static void resetAll() {
+    for (IngestStage stage : values()) {
+      stage.counter.set(0);
+    }
+  }
+}
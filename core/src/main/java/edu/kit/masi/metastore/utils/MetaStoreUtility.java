@@ -20,6 +20,7 @@ import com.github.benmanes.caffeine.cache.LoadingCache;
 import edu.kit.masi.metastore.db.ArangoDB;
 import edu.kit.masi.metastore.exception.MetaStoreException;
 import edu.kit.masi.metastore.model.MetsArangoPOJO;
+import edu.kit.masi.metastore.model.PreparedSection;
 import edu.kit.masi.metastore.model.SectionDocument;
 import edu.kit.masi.plugin.index.IIndexPlugin;
 import edu.kit.masi.plugin.index.impl.IndexPluginFactory;
@@ -27,20 +28,20 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.nio.charset.Charset;
-import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.XML;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,26 +67,33 @@ public class MetaStoreUtility {
 
   private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance(
           "org.apache.xalan.processor.TransformerFactoryImpl", null);
-  
-  private static final Transformer NO_TRANSFORM = getNoTransformer();
 
-  private static final LoadingCache<String, Transformer> TRANSFORMER_BY_TYPE = Caffeine.newBuilder()
+  /**
+   * Compiled xslt for each type. Templates are thread safe and the xslt files
+   * do not change at runtime, so entries never expire. Types without xslt are
+   * cached as empty value.
+   */
+  private static final LoadingCache<String, Optional<Templates>> TEMPLATES_BY_TYPE = Caffeine.newBuilder()
           .initialCapacity(10)
-          .expireAfterAccess(1, TimeUnit.MINUTES)
           .build(type -> {
             LOGGER.trace("Look for xslt for type '{}'", type);
             InputStream is = MetaStoreUtility.class.getResourceAsStream(XSLT_PATH + type + XSLT_EXTENSION);
-            Transformer transformer = NO_TRANSFORM;
+            Templates templates = null;
             if (is != null) {
-             StreamSource xlsStreamSource = new StreamSource(is);
-             try {
-                transformer = TRANSFORMER_FACTORY.newTransformer(xlsStreamSource);
+              StreamSource xlsStreamSource = new StreamSource(is);
+              try {
+                // TransformerFactory is not thread safe.
+                synchronized (TRANSFORMER_FACTORY) {
+                  templates = TRANSFORMER_FACTORY.newTemplates(xlsStreamSource);
+                }
                 LOGGER.trace("Load xslt for type '{}'", type);
               } catch (TransformerConfigurationException ex) {
                 LOGGER.error(null, ex);
+              } finally {
+                is.close();
               }
             }
-            return transformer;
+            return Optional.ofNullable(templates);
           });
 
   /**
@@ -103,125 +111,148 @@ public class MetaStoreUtility {
   }
 
   /**
-   * Index the new json object.
+   * Get paths of all values of the new json object for indexing. All paths
+   * are selected. Use the index profile of the prefix to select the
+   * configured paths only.
    *
    * @param jsonObj Object to index.
    * @return Set containing all indexes.
+   * @see ArangoDB#getIndexProfile(java.lang.String)
    */
   public static Set<String> applyIndexing(JSONObject jsonObj) {
-    Set<String> indexSet = new HashSet<>();
-    for (Object keys : jsonObj.keySet()) {
-      String nKeys = (String) keys;
-      Object keyvalue = jsonObj.get(nKeys);
-
-      if (keyvalue instanceof JSONObject) {
-        getRecursiveKeys(keyvalue, nKeys, indexSet);
-      }
-    }
-    return indexSet;
+    return IndexProfile.ALL.getIndexPaths(jsonObj);
   }
 
   /**
-   * Get all keys from (JSON) object
+   * Write nested section document to arango.
    *
-   * @param keys Object (JSONObject)
-   * @param nKeys Key of object
-   * @param indexSet Set with all indexes.(Set will be modified during
-   * execution.)
-   * @return Empty string.
+   * @param pArango Instance for communicating with database.
+   * @param pSectionDoc Instance holding all information about nested section.
+   * @throws MetaStoreException An error occurred.
    */
-  private static String getRecursiveKeys(Object keys, String nKeys, Set<String> indexSet) {
-    JSONObject jsonobj = (JSONObject) keys;
-
-    for (Object keysets : jsonobj.keySet()) {
-      StringBuilder pathKey = new StringBuilder();
-      String nkeys = (String) keysets;
-
-      pathKey.append(nKeys).append(".").append(nkeys);
-
-      Object keyvalue = jsonobj.get(nkeys);
-
-      if (keyvalue instanceof JSONArray) {
-
-        JSONArray keyValueArray = (JSONArray) keyvalue;
-        for (int i = 0; i < keyValueArray.length(); i++) {
-          try {
-            JSONObject arrayToObj = keyValueArray.getJSONObject(i);
-            pathKey.append(".").append(getRecursiveKeys(arrayToObj, pathKey.toString(), indexSet));
-          } catch (JSONException e) {
-          }
-        }
-      }
-
-      if (keyvalue instanceof JSONObject) {
-        pathKey.append(".").append(getRecursiveKeys(keyvalue, pathKey.toString(), indexSet));
-      }
-
-      if (!pathKey.toString().endsWith(".")) {
-        indexSet.add("json." + pathKey.toString().replaceAll("\\.\\.+", "."));
-      }
-    }
-    return "";
+  public static void storeNestedSection(ArangoDB pArango, SectionDocument pSectionDoc) throws MetaStoreException {
+    PreparedSection preparedSection = prepareNestedSection(pArango, pSectionDoc);
+    pArango.storeXmlDocument(preparedSection.getDocument());
+    indexNestedSection(pArango, preparedSection);
   }
 
   /**
-   * Write nested section document to arango.
+   * Prepare nested section document for storing. The section is not written
+   * to the database.
    *
    * @param pArango Instance for communicating with database.
    * @param pSectionDoc Instance holding all information about nested section.
+   * @return Section ready for storing and indexing.
    * @throws MetaStoreException An error occurred.
    */
-  public static void storeNestedSection(ArangoDB pArango, SectionDocument pSectionDoc) throws MetaStoreException {
+  public static PreparedSection prepareNestedSection(ArangoDB pArango, SectionDocument pSectionDoc) throws MetaStoreException {
+    String xsdHashValue = MetaStoreUtility.getHashValue(pSectionDoc.getType());
+    return prepareNestedSection(pSectionDoc, pArango.getRegisteredXsdPrefix(xsdHashValue),
+            pArango.getIndexProfile(xsdHashValue));
+  }
+
+  /**
+   * Prepare nested section document for storing with the registered prefix
+   * and index profile of its type.
+   *
+   * @param pSectionDoc Instance holding all information about nested section.
+   * @param pPrefix Prefix registered for the type of the section.
+   * @param pIndexProfile Index profile of the type of the section.
+   * @return Section ready for storing and indexing.
+   * @throws MetaStoreException An error occurred.
+   */
+  static PreparedSection prepareNestedSection(SectionDocument pSectionDoc, String pPrefix, IndexProfile pIndexProfile)
+          throws MetaStoreException {
     try {
-      LOGGER.trace("Store nested section document for type: {}", pSectionDoc.getType());
-      String xmlDocument = XmlUtility.xmlToString(pSectionDoc.getRootNode());
-      String prefix = pArango.getRegisteredXsdPrefix(MetaStoreUtility.getHashValue(pSectionDoc.getType()));
-      // Two step storing document into arangodb 
-      // 1.Step is to store in model as we need to store the XML content into AranogDB and it cannot be stored with rawDocument in ArangoDB
+      LOGGER.trace("Prepare nested section document for type: {}", pSectionDoc.getType());
+      String xmlDocument = pSectionDoc.getXmlData();
+      if (xmlDocument == null) {
+        xmlDocument = XmlUtility.xmlToString(pSectionDoc.getRootNode());
+      }
+      IngestStage.JSON_CONVERSION.increment();
+      JSONObject jsonOrig = XmlToJson.toJSONObject(xmlDocument);
+      // xml data, type, json and mainXmlHandler are stored with one request.
       MetsArangoPOJO metsPojo = new MetsArangoPOJO();
       metsPojo.setId(pSectionDoc.getSectionId());
       metsPojo.setMainXmlHandler(pSectionDoc.getDigitalObjectId());
+      metsPojo.setType(pSectionDoc.getType());
       metsPojo.setXmlData(xmlDocument);
-      String arangoDocumentHandler = pArango.storeXmlDocument(metsPojo);
-      // 2. Step is to update the above document in raw document format as arango allows in this way to store JSON data.
-      String jsonStringOrig = XML.toJSONObject(xmlDocument).toString();
-      xmlDocument = transformXml(xmlDocument, prefix);
-      String jsonString = XML.toJSONObject(xmlDocument).toString();
-      String finalStr = "{\"type\":\"" + pSectionDoc.getType() + "\",\"json\":" + jsonStringOrig
-              + ",\"mainXmlHandler\":\"" + pSectionDoc.getDigitalObjectId() + "\"}";
-      pArango.storeJSONRawDocument(arangoDocumentHandler, finalStr);
+      metsPojo.setJson(jsonOrig.toString());
+      metsPojo.setSearchText(pIndexProfile.buildSearchText(jsonOrig));
+      return new PreparedSection(metsPojo, jsonOrig, pPrefix, pSectionDoc.getRootNode());
+    } catch (JSONException jex) {
+      throw new MetaStoreException("Error creating JSON document for section id: " + pSectionDoc.getSectionId(), jex);
+    }
+  }
 
+  /**
+   * Index nested section document already stored in database.
+   *
+   * @param pArango Instance for communicating with database.
+   * @param pSection Section stored before.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static void indexNestedSection(ArangoDB pArango, PreparedSection pSection) throws MetaStoreException {
+    MetsArangoPOJO document = pSection.getDocument();
+    try {
       // Index section document
       // Skip DataOrganization due to key value pairs with different types.
-      if (!pSectionDoc.getType().equalsIgnoreCase("http://datamanager.kit.edu/dama/dataorganization")) {
+      if (!document.getType().equalsIgnoreCase("http://datamanager.kit.edu/dama/dataorganization")) {
         IIndexPlugin indexPlugin = IndexPluginFactory.getIndexPlugin();
         // if indexing is available index document.
         if (indexPlugin != null) {
-          indexPlugin.indexJsonDocument(jsonString, pSectionDoc.getDigitalObjectId(), prefix);
+          // Transform the parsed section. Without xslt the json created before is used.
+          Source source;
+          if (pSection.getRootNode() != null) {
+            source = new DOMSource(pSection.getRootNode());
+          } else {
+            source = new StreamSource(new StringReader(document.getXmlData()));
+          }
+          String transformedXml = transformXml(source, pSection.getPrefix());
+          String jsonString;
+          if (transformedXml != null) {
+            IngestStage.JSON_CONVERSION.increment();
+            jsonString = XmlToJson.toJson(transformedXml);
+          } else {
+            jsonString = pSection.getJson().toString();
+          }
+          indexPlugin.indexJsonDocument(jsonString, document.getMainXmlHandler(), pSection.getPrefix());
         }
       }
 
-      // Applying Indexing operations. 
-      // Index are applied on the stored json as aranogdb adds MAP attribute to some arrays, So to avoid unknow indexing.
-      LOGGER.trace("Start indexing  section in database for type: {}", pSectionDoc.getType());
-      JSONObject getStoredJson = pArango.getJsonObject(arangoDocumentHandler);
-      Set<String> indexSet = applyIndexing(getStoredJson);
-      pArango.applyIndexes(indexSet);
-      LOGGER.trace("Finished indexing  section in database for type: {}", pSectionDoc.getType());
+      // Applying Indexing operations (only for legacy indexing per path).
+      // Otherwise the search text stored with the section is already indexed.
+      // Index paths are determined from the json stored before (no need to read it again).
+      if (pArango.isPathIndexing()) {
+        LOGGER.trace("Start indexing  section in database for type: {}", document.getType());
+        IndexProfile indexProfile = pArango.getIndexProfile(MetaStoreUtility.getHashValue(document.getType()));
+        Set<String> indexSet = indexProfile.getIndexPaths(pSection.getJson());
+        pArango.applyIndexes(indexSet);
+        LOGGER.trace("Finished indexing  section in database for type: {}", document.getType());
+      }
     } catch (JSONException jex) {
-      throw new MetaStoreException("Error creating JSON document for section id: " + pSectionDoc.getSectionId(), jex);
+      throw new MetaStoreException("Error creating JSON document for section id: " + document.getId(), jex);
     }
   }
 
-  public static String transformXml(String pXmlDoc, String type) {
-    String transformedXml = pXmlDoc;
-    Transformer transformer = TRANSFORMER_BY_TYPE.get(type);
-    if (transformer != NO_TRANSFORM) {
+  /**
+   * Transform xml node with the xslt registered for the given type (prefix).
+   *
+   * @param pXmlSource Xml document (DOM or stream).
+   * @param type Prefix of the document.
+   * @return Transformed xml or null if there is no xslt for the type.
+   */
+  public static String transformXml(Source pXmlSource, String type) {
+    String transformedXml = null;
+    Optional<Templates> templates = TEMPLATES_BY_TYPE.get(type);
+    if (templates.isPresent()) {
       try {
-        StreamSource xmlStreamSource = new StreamSource(new StringReader(pXmlDoc));
+        IngestStage.TRANSFORMATION.increment();
+        // Transformer is cheap to create and used by one thread only.
+        Transformer transformer = templates.get().newTransformer();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         StreamResult result = new StreamResult(baos);
-        transformer.transform(xmlStreamSource, result);
+        transformer.transform(pXmlSource, result);
         transformedXml = baos.toString();
         LOGGER.trace("XML of type '{}' was transformed to: '{}'", type, transformedXml);
       } catch (TransformerException ex) {
@@ -231,15 +262,5 @@ public class MetaStoreUtility {
     return transformedXml;
 
   }
-  
-  private static Transformer getNoTransformer() {
-    Transformer noTransformer = null;
-    try {
-      noTransformer = TRANSFORMER_FACTORY.newTransformer();
-    } catch (TransformerConfigurationException ex) {
-      LOGGER.error(null, ex);
-    }
-    return noTransformer;
-  }
 
 }
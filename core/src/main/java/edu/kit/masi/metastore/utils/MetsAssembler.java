@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Assemble METS document from the stored METS file and the current xml data of
+ * its sections. The METS file is streamed from reader to writer in one pass
+ * and the first element inside each 'xmlData' is replaced by the section with
+ * the ID of the enclosing section element (../../@ID). No DOM is built.
+ *
+ * @author hartmann-v
+ */
+public class MetsAssembler {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetsAssembler.class);
+  /**
+   * Local name of the element holding the section.
+   */
+  private static final String XML_DATA = "xmlData";
+  /**
+   * Attribute holding the ID of the section.
+   */
+  private static final QName ID_ATTRIBUTE = new QName("ID");
+  /**
+   * Factory for reading xml.
+   */
+  private static final XMLInputFactory INPUT_FACTORY = XmlToolkit.getXmlInputFactory();
+  /**
+   * Factory for writing xml.
+   */
+  private static final XMLOutputFactory OUTPUT_FACTORY = XmlToolkit.getXmlOutputFactory(false);
+  /**
+   * Factory for creating events.
+   */
+  private static final XMLEventFactory EVENT_FACTORY = XmlToolkit.getXmlEventFactory();
+
+  /**
+   * Assemble METS document.
+   *
+   * @param pMetsXml METS file as stored during ingest.
+   * @param pSections Current xml data of all sections. (key: section ID)
+   * @return Assembled METS document.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static String assemble(String pMetsXml, Map<String, String> pSections) throws MetaStoreException {
+    StringWriter metsString = new StringWriter(pMetsXml.length());
+    XMLEventReader reader = null;
+    XMLEventWriter writer = null;
+    try {
+      reader = INPUT_FACTORY.createXMLEventReader(new StringReader(pMetsXml));
+      writer = OUTPUT_FACTORY.createXMLEventWriter(metsString);
+      writer.add(EVENT_FACTORY.createStartDocument("UTF-8", "1.0"));
+      // IDs of all open elements (null if element has no ID)
+      List<String> openIds = new ArrayList<>();
+      String pendingSection = null;
+      int xmlDataDepth = -1;
+      int skipDepth = 0;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (skipDepth > 0) {
+          // skip stored content of section which is replaced.
+          if (event.isStartElement()) {
+            skipDepth++;
+          } else if (event.isEndElement()) {
+            skipDepth--;
+          }
+          continue;
+        }
+        if (event.isStartDocument() || event.isEndDocument()) {
+          continue;
+        }
+        if (event.isStartElement()) {
+          if (pendingSection != null && openIds.size() == xmlDataDepth) {
+            // first element inside xmlData
+            writeSection(writer, pendingSection);
+            pendingSection = null;
+            skipDepth = 1;
+            continue;
+          }
+          StartElement startElement = event.asStartElement();
+          Attribute id = startElement.getAttributeByName(ID_ATTRIBUTE);
+          openIds.add(id != null ? id.getValue() : null);
+          writer.add(event);
+          if (XML_DATA.equals(startElement.getName().getLocalPart()) && openIds.size() > 2) {
+            String sectionId = openIds.get(openIds.size() - 3);
+            if (sectionId != null && pSections.containsKey(sectionId)) {
+              LOGGER.trace("Replace xml data of section '{}'", sectionId);
+              pendingSection = pSections.get(sectionId);
+              xmlDataDepth = openIds.size();
+            }
+          }
+        } else if (event.isEndElement()) {
+          if (pendingSection != null && openIds.size() == xmlDataDepth) {
+            // xmlData without any element
+            writeSection(writer, pendingSection);
+            pendingSection = null;
+          }
+          openIds.remove(openIds.size() - 1);
+          writer.add(event);
+        } else {
+          writer.add(event);
+        }
+      }
+      writer.flush();
+    } catch (XMLStreamException ex) {
+      throw new MetaStoreException("Error while assembling METS document! - " + ex.getMessage(), ex);
+    } finally {
+      close(reader, writer);
+    }
+    return metsString.toString();
+  }
+
+  /**
+   * Copy section to writer.
+   *
+   * @param pWriter Writer for METS document.
+   * @param pSection XML data of section.
+   * @throws XMLStreamException An error occurred.
+   */
+  private static void writeSection(XMLEventWriter pWriter, String pSection) throws XMLStreamException {
+    XMLEventReader sectionReader = INPUT_FACTORY.createXMLEventReader(new StringReader(pSection));
+    try {
+      while (sectionReader.hasNext()) {
+        XMLEvent event = sectionReader.nextEvent();
+        if (!event.isStartDocument() && !event.isEndDocument()) {
+          pWriter.add(event);
+        }
+      }
+    } finally {
+      sectionReader.close();
+    }
+  }
+
+  /**
+   * Close reader and writer quietly.
+   *
+   * @param pReader Reader (may be null).
+   * @param pWriter Writer (may be null).
+   */
+  private static void close(XMLEventReader pReader, XMLEventWriter pWriter) {
+    try {
+      if (pReader != null) {
+        pReader.close();
+      }
+      if (pWriter != null) {
+        pWriter.close();
+      }
+    } catch (XMLStreamException ex) {
+      LOGGER.warn("Error while closing stream!", ex);
+    }
+  }
+}
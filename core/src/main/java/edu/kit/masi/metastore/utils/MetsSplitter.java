@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import edu.kit.masi.metastore.model.SectionDocument;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Split METS document into its sections while reading it. Each element inside
+ * an 'xmlData' element is a section with the ID of the enclosing section
+ * element (../../@ID). No DOM is built. The sections are held as serialized
+ * xml, because all sections of a METS document are stored within one
+ * transaction. An already parsed METS document is split into its nodes
+ * instead.
+ *
+ * @author hartmann-v
+ */
+public class MetsSplitter {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetsSplitter.class);
+  /**
+   * Local name of the element holding the section.
+   */
+  private static final String XML_DATA = "xmlData";
+  /**
+   * Attribute holding the ID of the section.
+   */
+  private static final QName ID_ATTRIBUTE = new QName("ID");
+  /**
+   * Factory for reading xml.
+   */
+  private static final XMLInputFactory INPUT_FACTORY = XmlToolkit.getXmlInputFactory();
+  /**
+   * Factory for writing sections. Namespaces declared outside the section are
+   * declared again inside the section.
+   */
+  private static final XMLOutputFactory OUTPUT_FACTORY = XmlToolkit.getXmlOutputFactory(true);
+  /**
+   * Maximum size of one section (in characters).
+   */
+  private final long maxSectionSize;
+
+  /**
+   * Constructor.
+   *
+   * @param pMaxSectionSize Maximum size of one section (in characters).
+   */
+  public MetsSplitter(long pMaxSectionSize) {
+    maxSectionSize = pMaxSectionSize;
+  }
+
+  /**
+   * Get all sections of METS document in document order.
+   *
+   * @param pMetsXml METS document.
+   * @param pDigitalObjectId uniqueId of the mets file.
+   * @return List containing all sections.
+   * @throws MetaStoreException An error occurred or section exceeds maximum
+   * size.
+   */
+  public List<SectionDocument> getAllSections(String pMetsXml, String pDigitalObjectId) throws MetaStoreException {
+    List<SectionDocument> allSections = new ArrayList<>();
+    XMLEventReader reader = null;
+    IngestStage.PARSE.increment();
+    try {
+      reader = INPUT_FACTORY.createXMLEventReader(new StringReader(pMetsXml));
+      // IDs of all open elements (null if element has no ID)
+      List<String> openIds = new ArrayList<>();
+      String sectionId = null;
+      int xmlDataDepth = -1;
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          StartElement startElement = event.asStartElement();
+          if (sectionId != null && openIds.size() == xmlDataDepth) {
+            // element inside xmlData
+            allSections.add(readSection(reader, startElement, pDigitalObjectId, sectionId));
+            continue;
+          }
+          Attribute id = startElement.getAttributeByName(ID_ATTRIBUTE);
+          openIds.add(id != null ? id.getValue() : null);
+          if (XML_DATA.equals(startElement.getName().getLocalPart()) && openIds.size() > 2) {
+            sectionId = openIds.get(openIds.size() - 3);
+            xmlDataDepth = openIds.size();
+          }
+        } else if (event.isEndElement()) {
+          if (openIds.size() == xmlDataDepth) {
+            sectionId = null;
+            xmlDataDepth = -1;
+          }
+          openIds.remove(openIds.size() - 1);
+        }
+      }
+    } catch (XMLStreamException ex) {
+      throw new MetaStoreException("Error while splitting METS document! - " + ex.getMessage(), ex,
+              StatusCode.BAD_REQUEST.getStatusCode());
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException ex) {
+          LOGGER.warn("Error while closing stream!", ex);
+        }
+      }
+    }
+    return allSections;
+  }
+
+  /**
+   * Get all sections of an already parsed METS document in document order.
+   * The sections refer to the nodes of the given document (no serialization
+   * and no parsing).
+   *
+   * @param pMetsDocument METS document.
+   * @param pDigitalObjectId uniqueId of the mets file.
+   * @return List containing all sections.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static List<SectionDocument> getAllSections(Document pMetsDocument, String pDigitalObjectId)
+          throws MetaStoreException {
+    List<SectionDocument> allSections = new ArrayList<>();
+    try {
+      NodeList nodeList = XmlToolkit.selectNodes(XmlToolkit.Expression.XML_DATA_CHILDREN, pMetsDocument);
+      for (int index = 0; index < nodeList.getLength(); index++) {
+        // Determining ID of the section.
+        Node sectionNode = nodeList.item(index).getParentNode().getParentNode().getParentNode();
+        String sectionId = sectionNode.getAttributes().getNamedItem("ID").getNodeValue();
+        allSections.add(new SectionDocument(pDigitalObjectId, sectionId, nodeList.item(index)));
+      }
+    } catch (DOMException e) {
+      throw new MetaStoreException(e);
+    }
+    return allSections;
+  }
+
+  /**
+   * Read namespace of the root element.
+   *
+   * @param pXml XML document.
+   * @return Namespace URI of the root element.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static String getRootNamespace(String pXml) throws MetaStoreException {
+    XMLEventReader reader = null;
+    try {
+      reader = INPUT_FACTORY.createXMLEventReader(new StringReader(pXml));
+      while (reader.hasNext()) {
+        XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          return event.asStartElement().getName().getNamespaceURI();
+        }
+      }
+      throw new MetaStoreException("No root element found!", StatusCode.BAD_REQUEST.getStatusCode());
+    } catch (XMLStreamException ex) {
+      throw new MetaStoreException("Error while reading XML! - " + ex.getMessage(), ex,
+              StatusCode.BAD_REQUEST.getStatusCode());
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException ex) {
+          LOGGER.warn("Error while closing stream!", ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read section from reader. Reader is positioned behind the end element of
+   * the section afterwards.
+   *
+   * @param pReader Reader for METS document.
+   * @param pRootElement Root element of the section (already read).
+   * @param pDigitalObjectId uniqueId of the mets file.
+   * @param pSectionId ID of the section.
+   * @return Section containing the serialized xml data.
+   * @throws XMLStreamException An error occurred.
+   * @throws MetaStoreException Section exceeds maximum size.
+   */
+  private SectionDocument readSection(XMLEventReader pReader, StartElement pRootElement, String pDigitalObjectId,
+          String pSectionId) throws XMLStreamException, MetaStoreException {
+    StringWriter sectionXml = new StringWriter();
+    XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(sectionXml);
+    writer.add(pRootElement);
+    int depth = 1;
+    while (depth > 0) {
+      XMLEvent event = pReader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+      } else if (event.isEndElement()) {
+        depth--;
+      }
+      writer.add(event);
+      checkSize(sectionXml, pSectionId);
+    }
+    writer.flush();
+    writer.close();
+    checkSize(sectionXml, pSectionId);
+    LOGGER.trace("Read section '{}' ({} characters)", pSectionId, sectionXml.getBuffer().length());
+    return new SectionDocument(pDigitalObjectId, pSectionId, pRootElement.getName().getNamespaceURI(),
+            sectionXml.toString());
+  }
+
+  /**
+   * Check size of the section read so far.
+   *
+   * @param pSectionXml Section read so far.
+   * @param pSectionId ID of the section.
+   * @throws MetaStoreException Section exceeds maximum size.
+   */
+  private void checkSize(StringWriter pSectionXml, String pSectionId) throws MetaStoreException {
+    if (pSectionXml.getBuffer().length() > maxSectionSize) {
+      throw new MetaStoreException("Section '" + pSectionId + "' exceeds maximum size of " + maxSectionSize
+              + " characters!", StatusCode.BAD_REQUEST.getStatusCode());
+    }
+  }
+}
@@ -17,40 +17,23 @@ package edu.kit.masi.metastore.utils;
 
 import edu.kit.masi.metastore.model.MetsArangoPOJO;
 import edu.kit.masi.metastore.model.SectionDocument;
-import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
+import edu.kit.masi.metastore.model.StoredMetsDocument;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.validation.Schema;
 
 import org.json.JSONObject;
-import org.json.XML;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
-import com.arangodb.ArangoDriver;
 import com.arangodb.DocumentCursor;
 import com.arangodb.entity.BaseDocument;
 import com.arangodb.entity.DocumentEntity;
-import com.arangodb.entity.IndexEntity;
 import edu.kit.masi.metastore.db.ArangoDB;
 import edu.kit.masi.metastore.exception.MetaStoreException;
 import edu.kit.masi.metastore.exception.StatusCode;
@@ -81,8 +64,14 @@ public class MetsUtility {
   private static final Logger LOGGER = LoggerFactory.getLogger(MetsUtility.class);
   /** Prefix of mets. */
   private static final String METS_PREFIX = "mets:";
+  /**
+   * Placeholder for all prefixes.
+   */
+  public static final String ALL_PREFIXES = "_all";
   /** instance of ArangoDB. */
   private final ArangoDB arango;
+  /** Splitter for METS documents read as stream. */
+  private final MetsSplitter metsSplitter;
 
   /**
    * Constructor 
@@ -90,6 +79,7 @@ public class MetsUtility {
    */
   public MetsUtility(ArangoDB pArango) {
     arango = pArango;
+    metsSplitter = new MetsSplitter(pArango.getProperties().getMaxSectionSize());
   }
 
   /**
@@ -101,77 +91,55 @@ public class MetsUtility {
    * @throws MetaStoreException An error occurred.
    */
   public String getMetsDocument(String pUniqueId, ReturnType returnType) throws MetaStoreException {
-    String xmlString = arango.getXMLData(MetaStoreUtility.getHashValue(pUniqueId));
-
-    Document doc2 = XmlUtility.strToXmlDocument(xmlString);
-    DocumentCursor cursor = arango.getAllChildDocuments(pUniqueId);
-    Iterator iterator = cursor.entityIterator();
-    LOGGER.trace("METS Document: {}", xmlString);
-
-    XPath xPath = XPathFactory.newInstance().newXPath();
-    while (iterator.hasNext()) {
-      BaseDocument aDocument = (BaseDocument) iterator.next();
-
-      if (LOGGER.isTraceEnabled()) {
-        LOGGER.trace("Child Document: {}", aDocument.getAttribute("xmlData"));
-        LOGGER.trace("ID: {}", aDocument.getAttribute("id"));
-      }
+    StoredMetsDocument metsDocument = arango.getMetsDocumentWithSections(MetaStoreUtility.getHashValue(pUniqueId),
+            pUniqueId, returnType == ReturnType.JSON);
+    return getMetsDocument(metsDocument, returnType);
+  }
 
-      String xmpathExp = "//*[local-name()='xmlData'][../../@ID='" + aDocument.getAttribute("id") + "']";
-      try {
-        NodeList nodeList = (NodeList) xPath.compile(xmpathExp).evaluate(doc2, XPathConstants.NODESET);
-        if (nodeList.getLength() > 0) {
-          Node xmlDataNode = nodeList.item(0); // xmlData node
-          Node child = null;
-          int noOfChilds = xmlDataNode.getChildNodes().getLength();
-          for (int item = 0; item < noOfChilds; item++) {
-            child = xmlDataNode.getChildNodes().item(item);
-            if (LOGGER.isTraceEnabled()) {
-              LOGGER.trace("Node type: " + child.getNodeType());
-              LOGGER.trace(XmlUtility.xmlToString(child));
-            }
-            if (child.getNodeType() == Node.ELEMENT_NODE) {
-              break;
-            }
-          }
-
-          Node importedNode = XmlUtility.strToXmlDocument(aDocument.getAttribute("xmlData").toString())
-                  .getFirstChild();
-          xmlDataNode.removeChild(child);
-          xmlDataNode.appendChild(doc2.importNode(importedNode, true));
-        }
-      } catch (XPathExpressionException | DOMException e) {
-        throw new MetaStoreException(e);
-      }
+  /**
+   * Assemble METS document with the current xml data of all sections as JSON
+   * or XML.
+   *
+   * @param pMetsDocument METS document with all sections read from database.
+   * @param returnType String (JSON/XML)
+   * @return XML document as string.
+   * @throws MetaStoreException An error occurred.
+   */
+  public String getMetsDocument(StoredMetsDocument pMetsDocument, ReturnType returnType) throws MetaStoreException {
+    if (returnType == ReturnType.JSON && pMetsDocument.getMetsJson() != null) {
+      return pMetsDocument.getMetsJson();
     }
-    // ***************************************************************************
-    // The next 4 lines are no longer needed due to store xmlData childs
-    // directly.
-    // String filesecpathExp = "//*[local-name()='fileSec']";
-    // String stuctpathExp = "//*[local-name()='structMap']";
-    // changeStructure(filesecpathExp, doc2, xPath);
-    // changeStructure(stuctpathExp, doc2, xPath);
-    // ***************************************************************************
-    String metsString = XmlUtility.xmlToString(doc2);
+    LOGGER.trace("METS Document: {}", pMetsDocument.getXml());
+    String metsString = MetsAssembler.assemble(pMetsDocument.getXml(), pMetsDocument.getSections());
 
     LOGGER.trace("Updated METS Document: {}", metsString);
     if (returnType == ReturnType.JSON) {
-      JSONObject toJSONObject = XML.toJSONObject(metsString);
-      metsString = toJSONObject.toString();
+      metsString = XmlToJson.toJson(metsString);
+      // Persist rendering for further requests.
+      try {
+        if (!arango.storeMetsJson(pMetsDocument.getKey(), pMetsDocument.getRevision(), metsString)) {
+          LOGGER.debug("METS document '{}' changed meanwhile. JSON rendering not stored.", pMetsDocument.getKey());
+        }
+      } catch (MetaStoreException ex) {
+        LOGGER.warn("Error while storing JSON rendering of METS document!", ex);
+      }
     }
     return metsString;
   }
 
   // <editor-fold defaultstate="collapsed" desc="Handling sections>
   /**
-   * Get all section documents (xmlData) of a mets file.
+   * Get all section documents (xmlData) of a mets file. The mets file is
+   * read as stream (no DOM) and the sections hold their serialized xml data.
+   * All sections are returned together, because they are stored within one
+   * transaction.
    *
    * @param pMetsXml mets file as string.
    * @param pDigitalObjectId uniqueId of the mets file.
    * @return List containing all documents.
    */
   private List<SectionDocument> getAllSections(String pMetsXml, String pDigitalObjectId) throws MetaStoreException {
-    return getAllSections(XmlUtility.strToXmlDocument(pMetsXml), pDigitalObjectId);
+    return metsSplitter.getAllSections(pMetsXml, pDigitalObjectId);
   }
 
   /**
@@ -183,25 +151,7 @@ public class MetsUtility {
    */
   private List<SectionDocument> getAllSections(Document pMetsDocument, String pDigitalObjectId)
           throws MetaStoreException {
-    List<SectionDocument> allSections = new ArrayList<>();
-
-    XPath xPath = XPathFactory.newInstance().newXPath();
-    String xmpathExp = "//*[local-name()='xmlData']/*";
-    try {
-      NodeList nodeList = (NodeList) xPath.compile(xmpathExp).evaluate(pMetsDocument, XPathConstants.NODESET);
-      for (int index = 0; index < nodeList.getLength(); index++) {
-        SectionDocument sd;
-        // Determining ID of the section.
-        Node sectionNode = nodeList.item(index).getParentNode().getParentNode().getParentNode();
-        String sectionId = sectionNode.getAttributes().getNamedItem("ID").getNodeValue();
-        Node rootNode = nodeList.item(index);
-        sd = new SectionDocument(pDigitalObjectId, sectionId, rootNode);
-        allSections.add(sd);
-      }
-    } catch (XPathExpressionException | DOMException e) {
-      throw new MetaStoreException(e);
-    }
-    return allSections;
+    return MetsSplitter.getAllSections(pMetsDocument, pDigitalObjectId);
   }
 
   /**
@@ -260,7 +210,8 @@ public class MetsUtility {
   }
 
   /**
-   * Validate all section documents (xmlData) of a mets file.
+   * Validate all section documents (xmlData) of a mets file. The mets file is
+   * split as stream without building a DOM.
    *
    * @param pMetsXml mets file as string.
    * @param pDigitalObjectId uniqueId of the mets file.
@@ -270,16 +221,45 @@ public class MetsUtility {
   public List<SectionDocument> validateNestedSections(String pMetsXml, String pDigitalObjectId)
           throws MetaStoreException {
     List<SectionDocument> allSections = getAllSections(pMetsXml, pDigitalObjectId);
-    // Validate all nested sections
-    for (SectionDocument sectionDoc : allSections) {
-      if (!validateSectionDocument(sectionDoc)) {
-        throw new MetaStoreException("Invalid section '" + sectionDoc.getSectionId() + "'!",
-                StatusCode.BAD_REQUEST.getStatusCode());
-      }
-    }
+    validateSections(allSections);
+    return allSections;
+  }
+
+  /**
+   * Validate all section documents (xmlData) of an already parsed mets file.
+   * The sections refer to the nodes of the given document.
+   *
+   * @param pMetsDocument mets file as DOM.
+   * @param pDigitalObjectId uniqueId of the mets file.
+   * @return List containing all nested sections.
+   * @throws edu.kit.masi.metastore.exception.MetaStoreException An error occurred.
+   */
+  public List<SectionDocument> validateNestedSections(Document pMetsDocument, String pDigitalObjectId)
+          throws MetaStoreException {
+    List<SectionDocument> allSections = getAllSections(pMetsDocument, pDigitalObjectId);
+    validateSections(allSections);
     return allSections;
   }
 
+  /**
+   * Validate all nested sections.
+   *
+   * @param pSections All nested sections.
+   * @throws MetaStoreException At least one section is not valid.
+   */
+  private void validateSections(List<SectionDocument> pSections) throws MetaStoreException {
+    // Sections are independent of each other and validated in parallel.
+    List<ValidationExecutor.ValidationTask> tasks = new ArrayList<>(pSections.size());
+    for (SectionDocument sectionDoc : pSections) {
+      tasks.add(() -> validateSectionDocument(sectionDoc));
+    }
+    int invalidSection = ValidationExecutor.validateAll(tasks);
+    if (invalidSection >= 0) {
+      throw new MetaStoreException("Invalid section '" + pSections.get(invalidSection).getSectionId() + "'!",
+              StatusCode.BAD_REQUEST.getStatusCode());
+    }
+  }
+
   /**
    * Validate section document.
    *
@@ -291,7 +271,11 @@ public class MetsUtility {
     String hashValue = MetaStoreUtility.getHashValue(pSection.getType());
     boolean validateSection = false;
     try {
-      validateSection = validateNode(pSection.getRootNode(), hashValue);
+      if (pSection.getRootNode() != null) {
+        validateSection = validateNode(pSection.getRootNode(), hashValue);
+      } else {
+        validateSection = XmlUtility.validate(pSection.getXmlData(), arango.getRegisteredSchema(hashValue));
+      }
     } catch (MetaStoreException ex) {
       throw new MetaStoreException("Error while validating document for namespace '" + pSection.getType() + "'! - " + ex.getMessage(), ex);
     }
@@ -322,9 +306,9 @@ public class MetsUtility {
    * @throws MetaStoreException An error occurred.
    */
   public boolean validateNode(Node pRootNode, String pHashOfXsd) throws MetaStoreException {
-    String xsdString = arango.getRegisteredXsd(pHashOfXsd);
-    String xmlString = XmlUtility.xmlToString(pRootNode);
-    return XmlUtility.validate(xmlString, xsdString);
+    Schema schema = arango.getRegisteredSchema(pHashOfXsd);
+    // Node is validated in place (no serialization and no parsing)
+    return XmlUtility.validate(pRootNode, schema);
     // return validateAgainstXsd(xsdString, xmlString);
   }
   // </editor-fold>
@@ -337,19 +321,98 @@ public class MetsUtility {
    * @throws MetaStoreException an error occurred.
    */
   public Set<String> searchFullTextWithId(String searchTerm) throws MetaStoreException {
+    return searchFullTextWithId(searchTerm, null, null, 0);
+  }
 
-    Set<String> digitalObjID = new HashSet<>();
+  /**
+   * Get all digital object ids of mets documents matching the search terms.
+   * The hits of each term are held as sorted sets. For a conjunction the
+   * smallest sets are intersected first and no further terms are queried as
+   * soon as one term has no hits.
+   *
+   * @param searchTerms search terms
+   * @param prefixes restrict search to sections of the given prefixes (null,
+   * empty or '_all' for all prefixes)
+   * @param conjunction true: all terms have to fit, false: at least one term
+   * has to fit.
+   * @return Collection with all matching digital object ids (sorted).
+   * @throws MetaStoreException an error occurred.
+   */
+  public Set<String> searchFullTextWithId(List<String> searchTerms, List<String> prefixes, boolean conjunction)
+          throws MetaStoreException {
+    return searchFullTextWithId(searchTerms, prefixes, conjunction, null, 0);
+  }
 
-    for (IndexEntity indexEntity : arango.getIndexes().getIndexes()) {
-      if (indexEntity.getType().toString().equalsIgnoreCase("fulltext")) {
-        // below method is used to get all the
-        DocumentCursor<ArangoDriver> cursuroResults = arango.applyFullTextSearch(indexEntity.getFields().get(0),
-                searchTerm);
-        for (DocumentEntity<ArangoDriver> documentEntity : cursuroResults) {
-          digitalObjID.add(arango.getDigitalObjectIdForDocument(documentEntity.getDocumentKey()));
-        }
+  /**
+   * Get one page of the digital object ids of mets documents matching the
+   * search terms. The ids are sorted (see IdSetUtility.ORDER), so the last id
+   * of a page is the cursor for the next page. The cursor and (if possible) the
+   * limit are applied to the hits of each term before the hits are combined.
+   * The limit can't be applied for a conjunction of several terms.
+   *
+   * @param searchTerms search terms
+   * @param prefixes restrict search to sections of the given prefixes (null,
+   * empty or '_all' for all prefixes)
+   * @param conjunction true: all terms have to fit, false: at least one term
+   * has to fit.
+   * @param after return only ids greater than this id (null for first page).
+   * @param limit maximum number of ids (0 for all ids).
+   * @return Collection with the smallest matching digital object ids
+   * (sorted).
+   * @throws MetaStoreException an error occurred.
+   */
+  public Set<String> searchFullTextWithId(List<String> searchTerms, List<String> prefixes, boolean conjunction,
+          String after, int limit) throws MetaStoreException {
+    Set<String> types = null;
+    if (prefixes != null && !prefixes.isEmpty() && !prefixes.contains(ALL_PREFIXES)) {
+      types = arango.getRegisteredXsdTypes(prefixes);
+      if (types.isEmpty()) {
+        return new LinkedHashSet<>();
       }
     }
+    Set<String> terms = new LinkedHashSet<>(searchTerms);
+    // The smallest ids of a union are part of the smallest ids of each set.
+    int limitPerTerm = conjunction && terms.size() > 1 ? 0 : limit;
+    List<String[]> hitsPerTerm = new ArrayList<>();
+    for (String searchTerm : terms) {
+      String[] hits = IdSetUtility.toSortedSet(searchFullTextWithId(searchTerm, types, after, limitPerTerm));
+      if (conjunction && hits.length == 0) {
+        return new LinkedHashSet<>();
+      }
+      hitsPerTerm.add(hits);
+    }
+    String[] result = conjunction ? IdSetUtility.intersect(hitsPerTerm) : IdSetUtility.unite(hitsPerTerm);
+    if (limit > 0 && result.length > limit) {
+      result = Arrays.copyOf(result, limit);
+    }
+    return new LinkedHashSet<>(Arrays.asList(result));
+  }
+
+  /**
+   * Get all digital object ids of mets documents with matching search term.
+   *
+   * @param searchTerm search term
+   * @param types types (namespaces) of the sections or null for all types.
+   * @param after return only ids greater than this id (null for all ids).
+   * @param limit maximum number of ids per query (0 for all ids).
+   * @return Collection with all matching digital object ids.
+   * @throws MetaStoreException an error occurred.
+   */
+  private Set<String> searchFullTextWithId(String searchTerm, Set<String> types, String after, int limit) throws MetaStoreException {
+    if (!arango.isPathIndexing()) {
+      // One query on the consolidated search text.
+      return arango.searchFullText(searchTerm, types, after, limit);
+    }
+    // Query all fulltext indexes concurrently. Each query returns the
+    // digital object IDs (mainXmlHandler) of the matching sections.
+    List<SearchExecutor.SearchTask<Set<String>>> searchTasks = new ArrayList<>();
+    for (String attribute : arango.getFulltextIndexPaths()) {
+      searchTasks.add(() -> arango.searchFullText(attribute, searchTerm, types, after, limit));
+    }
+    Set<String> digitalObjID = new HashSet<>();
+    for (Set<String> result : SearchExecutor.searchAll(searchTasks, arango.getProperties().getSearchTimeout())) {
+      digitalObjID.addAll(result);
+    }
     return digitalObjID;
   }
 
@@ -364,22 +427,11 @@ public class MetsUtility {
 
     try {
 
-      InputSource source = new InputSource(new StringReader(incomingXML));
-
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      dbFactory.setNamespaceAware(true);
-      DocumentBuilder dBuilder;
-
-      dBuilder = dbFactory.newDocumentBuilder();
-
-      Document doc = dBuilder.parse(source);
+      Document doc = XmlToolkit.parse(incomingXML);
       doc.getDocumentElement().normalize();
 
-      // XPath xPath = XPathFactory.newInstance().newXPath();
-      String expression = "//*[local-name()='mets']/*";
       // this the expression to break the xml in different groups
-      XPath xPath = XPathFactory.newInstance().newXPath();
-      NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(doc, XPathConstants.NODESET);
+      NodeList nodeList = XmlToolkit.selectNodes(XmlToolkit.Expression.METS_CHILDREN, doc);
 
       for (int i = 0; i < nodeList.getLength(); i++) {
 
@@ -392,31 +444,25 @@ public class MetsUtility {
 
         } else {
 
-          StringWriter writer1 = new StringWriter();
-          Transformer transformer = TransformerFactory.newInstance().newTransformer();
-
-          transformer.transform(new DOMSource(node), new StreamResult(writer1));
+          String nodeXml = XmlToolkit.serialize(node);
 
-          JSONObject str2json = XML.toJSONObject(writer1.toString());
-          metsPOJO.setXmlData(writer1.toString());
+          JSONObject str2json = XmlToJson.toJSONObject(nodeXml);
+          metsPOJO.setXmlData(nodeXml);
           metsPOJO.setMainXmlHandler(documentHandler);
           metsPOJO.setSections(node.getNodeName().replaceAll(METS_PREFIX, ""));
           metsPOJO.setId(node.getAttributes().getNamedItem("ID").getNodeValue().toString());
+          metsPOJO.setType(node.getNodeName());
+          metsPOJO.setJson(str2json.toString());
 
-          String xmlKey = arango.storeXmlDocument(metsPOJO);
-          String finalStr = "{\"type\":\"" + node.getNodeName() + "\",\"json\":" + str2json
-                  + ",\"mainXmlHandler\":\"" + documentHandler + "\"}";
-          arango.storeJSONRawDocument(xmlKey, finalStr);
+          arango.storeXmlDocument(metsPOJO);
 
           // Applying Indexing operations
-          JSONObject getStoredJson = arango.getJsonObject(xmlKey);
-          Set<String> indexSet = MetaStoreUtility.applyIndexing(getStoredJson);
+          Set<String> indexSet = MetaStoreUtility.applyIndexing(str2json);
           arango.applyIndexes(indexSet);
         }
       }
 
-    } catch (IOException | ParserConfigurationException | TransformerException | XPathExpressionException
-            | JSONException | DOMException | SAXException e) {
+    } catch (JSONException | DOMException e) {
       throw new MetaStoreException(e);
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the queries of one search concurrently on a bounded worker pool
+ * shared by all requests. The size of the pool is configured by
+ * 'searchThreads'. If a query is not finished within the deadline all queries
+ * are cancelled and the search fails, so incomplete results are never
+ * returned. Queries are never executed by the caller (outside the deadline):
+ * if the pool is busy the search fails immediately.
+ *
+ * @author hartmann-v
+ */
+public class SearchExecutor {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SearchExecutor.class);
+  /**
+   * Pool shared by all searches.
+   */
+  private static final BoundedExecutor EXECUTOR = new BoundedExecutor("search",
+          ArangoPropertyHandler::getSearchThreads, false);
+
+  /**
+   * Query of a search.
+   *
+   * @param <T> Type of the result.
+   */
+  @FunctionalInterface
+  public interface SearchTask<T> {
+
+    /**
+     * Execute query.
+     *
+     * @return Result of the query.
+     * @throws MetaStoreException An error occurred.
+     */
+    T search() throws MetaStoreException;
+  }
+
+  /**
+   * Execute all queries concurrently and wait until all of them are finished
+   * or the deadline is reached. At most one query per thread of the pool is
+   * submitted at once. The following queries are submitted as soon as the
+   * previous ones are finished. All queries share the same deadline. If
+   * queries fail the error of the first failing query (in order of the list)
+   * is thrown.
+   *
+   * @param <T> Type of the results.
+   * @param pTasks All queries.
+   * @param pTimeout Deadline (in milliseconds) for all queries.
+   * @return Results of all queries (in the order of the queries).
+   * @throws MetaStoreException Error of the first failing query or
+   * SERVICE_UNAVAILABLE if the deadline is exceeded or the pool is busy.
+   */
+  public static <T> List<T> searchAll(List<SearchTask<T>> pTasks, long pTimeout) throws MetaStoreException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pTimeout);
+    int maxRunningQueries = EXECUTOR.getNoOfThreads();
+    List<T> results = new ArrayList<>(pTasks.size());
+    Deque<Future<T>> runningQueries = new ArrayDeque<>(maxRunningQueries);
+    int nextTask = 0;
+    try {
+      while (results.size() < pTasks.size()) {
+        while (nextTask < pTasks.size() && runningQueries.size() < maxRunningQueries) {
+          SearchTask<T> task = pTasks.get(nextTask++);
+          runningQueries.add(EXECUTOR.submit(task::search));
+        }
+        try {
+          results.add(EXECUTOR.getResult(runningQueries.peek(), deadline));
+          runningQueries.poll();
+        } catch (TimeoutException ex) {
+          LOGGER.warn("{} of {} queries exceeded deadline of {} ms.", pTasks.size() - results.size(),
+                  pTasks.size(), pTimeout);
+          throw new MetaStoreException("Search exceeded deadline of " + pTimeout + " ms!", ex,
+                  StatusCode.SERVICE_UNAVAILABLE.getStatusCode());
+        }
+      }
+    } finally {
+      // Remaining queries are not needed any longer.
+      for (Future<T> future : runningQueries) {
+        future.cancel(true);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Shut down the pool.
+   */
+  public static void shutdown() {
+    EXECUTOR.shutdown();
+  }
+}
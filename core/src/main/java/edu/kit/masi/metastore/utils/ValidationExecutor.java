@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Executes validation tasks in parallel on a bounded worker pool shared by
+ * all requests. The size of the pool is configured by 'validationThreads'.
+ *
+ * @author hartmann-v
+ */
+public class ValidationExecutor {
+
+  /**
+   * Pool shared by all validations.
+   */
+  private static final BoundedExecutor EXECUTOR = new BoundedExecutor("validation",
+          ArangoPropertyHandler::getValidationThreads);
+
+  /**
+   * Task validating one document.
+   */
+  @FunctionalInterface
+  public interface ValidationTask {
+
+    /**
+     * Validate document.
+     *
+     * @return valid or not.
+     * @throws MetaStoreException An error occurred.
+     */
+    boolean validate() throws MetaStoreException;
+  }
+
+  /**
+   * Validate all documents in parallel. Results are checked in the order of
+   * the tasks, so the first invalid document (in document order) is reported
+   * independent of the order of execution.
+   *
+   * @param pTasks All validation tasks.
+   * @return Index of the first invalid document or -1 if all documents are
+   * valid.
+   * @throws MetaStoreException Error while validating the first failing
+   * document.
+   */
+  public static int validateAll(List<ValidationTask> pTasks) throws MetaStoreException {
+    if (pTasks.size() <= 1) {
+      // Nothing to parallelize.
+      for (int index = 0; index < pTasks.size(); index++) {
+        if (!pTasks.get(index).validate()) {
+          return index;
+        }
+      }
+      return -1;
+    }
+    List<Callable<Boolean>> callables = new ArrayList<>(pTasks.size());
+    for (ValidationTask task : pTasks) {
+      callables.add(task::validate);
+    }
+    List<Future<Boolean>> results = EXECUTOR.submitAll(callables);
+    try {
+      for (int index = 0; index < results.size(); index++) {
+        if (!EXECUTOR.getResult(results.get(index))) {
+          return index;
+        }
+      }
+    } finally {
+      // Remaining validations are not needed any longer.
+      for (Future<Boolean> result : results) {
+        result.cancel(false);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Shut down the pool.
+   */
+  public static void shutdown() {
+    EXECUTOR.shutdown();
+  }
+}
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.json.JSONObject;
+import org.json.XML;
+
+/**
+ * Convert XML to JSON. The XML is read with StAX and no intermediate tree is
+ * built. The JSON has the same shape as the one created by org.json
+ * XML.toJSONObject:
+ * <ul>
+ * <li>Elements and attributes are accumulated by (prefixed) name. Repeated
+ * names become arrays.</li>
+ * <li>Namespace declarations are attributes ('xmlns', 'xmlns:prefix').</li>
+ * <li>Text is trimmed and stored as 'content'. Text separated by child
+ * elements, comments or CDATA sections becomes an array.</li>
+ * <li>Text and attribute values are coerced via XML.stringToValue. CDATA is
+ * neither trimmed nor coerced.</li>
+ * <li>Elements without attributes and children are converted to "". Elements
+ * holding only 'content' are converted to their content.</li>
+ * </ul>
+ * Unlike org.json, numeric character references are decoded by the parser.
+ *
+ * @author hartmann-v
+ */
+public class XmlToJson {
+
+  /**
+   * Key for text content.
+   */
+  private static final String CONTENT = "content";
+  /**
+   * Prefix of namespace declarations.
+   */
+  private static final String XMLNS = "xmlns";
+  /**
+   * Factory for reading xml.
+   */
+  private static final XMLInputFactory INPUT_FACTORY = XmlToolkit.getCdataReportingXmlInputFactory();
+
+  /**
+   * Receives the members of the elements while the XML is read.
+   */
+  private interface ElementHandler {
+
+    /**
+     * Element is opened.
+     */
+    void startElement();
+
+    /**
+     * Add member (attribute or content) to the open element.
+     *
+     * @param pKey Key.
+     * @param pValue Value (String, Number or Boolean).
+     */
+    void accumulate(String pKey, Object pValue);
+
+    /**
+     * Element is closed and added to its parent.
+     *
+     * @param pName Name of the element.
+     */
+    void endElement(String pName);
+  }
+
+  /**
+   * Utility class.
+   */
+  private XmlToJson() {
+  }
+
+  /**
+   * Convert XML to JSON text.
+   *
+   * @param pXml XML document.
+   * @return JSON text.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static String toJson(String pXml) throws MetaStoreException {
+    StringBuilder json = new StringBuilder(pXml.length());
+    toJson(new StringReader(pXml), json);
+    return json.toString();
+  }
+
+  /**
+   * Convert XML to JSON text. Each element is serialized once when it is
+   * closed. Its JSON text is linked into the text of its parent, because
+   * repeated names are collected in one array. The text of the whole
+   * document is written to the output at the end.
+   *
+   * @param pXml Reader for XML document.
+   * @param pJson Output for JSON text (e.g. StringBuilder or Writer).
+   * @throws MetaStoreException An error occurred.
+   */
+  public static void toJson(Reader pXml, Appendable pJson) throws MetaStoreException {
+    JsonTextHandler handler = new JsonTextHandler();
+    read(pXml, handler);
+    try {
+      handler.writeRoot(pJson);
+    } catch (IOException ex) {
+      throw new MetaStoreException("Error while writing JSON! - " + ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Convert XML to JSON object. The JSON object is built directly while
+   * reading.
+   *
+   * @param pXml XML document.
+   * @return JSON object.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static JSONObject toJSONObject(String pXml) throws MetaStoreException {
+    JSONObjectHandler handler = new JSONObjectHandler();
+    read(new StringReader(pXml), handler);
+    return handler.getRoot();
+  }
+
+  /**
+   * Read XML and pass its elements, attributes and text to the handler.
+   *
+   * @param pXml Reader for XML document.
+   * @param pHandler Handler.
+   * @throws MetaStoreException An error occurred.
+   */
+  private static void read(Reader pXml, ElementHandler pHandler) throws MetaStoreException {
+    int depth = 0;
+    StringBuilder text = new StringBuilder();
+    XMLStreamReader reader = null;
+    try {
+      reader = INPUT_FACTORY.createXMLStreamReader(pXml);
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+          if (depth > 0) {
+            text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          }
+          continue;
+        }
+        if (event == XMLStreamConstants.CDATA) {
+          if (depth > 0) {
+            // Each CDATA section is added as it is (neither trimmed nor coerced).
+            addText(pHandler, text);
+            if (reader.getTextLength() > 0) {
+              pHandler.accumulate(CONTENT, reader.getText());
+            }
+          }
+          continue;
+        }
+        // Any other markup ends text.
+        addText(pHandler, text);
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+          pHandler.startElement();
+          for (int index = 0; index < reader.getNamespaceCount(); index++) {
+            String prefix = reader.getNamespacePrefix(index);
+            String name = prefix == null || prefix.isEmpty() ? XMLNS : XMLNS + ":" + prefix;
+            pHandler.accumulate(name, XML.stringToValue(reader.getNamespaceURI(index)));
+          }
+          for (int index = 0; index < reader.getAttributeCount(); index++) {
+            String name = getName(reader.getAttributePrefix(index), reader.getAttributeLocalName(index));
+            pHandler.accumulate(name, XML.stringToValue(reader.getAttributeValue(index)));
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+          pHandler.endElement(getName(reader.getPrefix(), reader.getLocalName()));
+        }
+      }
+    } catch (XMLStreamException ex) {
+      throw new MetaStoreException("Error while converting XML to JSON! - " + ex.getMessage(), ex);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException ex) {
+          // nothing to do
+        }
+      }
+    }
+  }
+
+  /**
+   * Get (prefixed) name.
+   *
+   * @param pPrefix Prefix (may be null or empty).
+   * @param pLocalName Local name.
+   * @return Name as written in XML document.
+   */
+  private static String getName(String pPrefix, String pLocalName) {
+    return pPrefix == null || pPrefix.isEmpty() ? pLocalName : pPrefix + ":" + pLocalName;
+  }
+
+  /**
+   * Add text read so far as (trimmed) content.
+   *
+   * @param pHandler Handler of the current element.
+   * @param pText Text read so far. (Cleared afterwards)
+   */
+  private static void addText(ElementHandler pHandler, StringBuilder pText) {
+    if (pText.length() > 0) {
+      String content = pText.toString().trim();
+      if (!content.isEmpty()) {
+        pHandler.accumulate(CONTENT, XML.stringToValue(content));
+      }
+      pText.setLength(0);
+    }
+  }
+
+  /**
+   * Get value as JSON text.
+   *
+   * @param pValue String, Number or Boolean.
+   * @return JSON text.
+   */
+  private static JsonText toJsonText(Object pValue) {
+    StringBuilder json = new StringBuilder();
+    if (pValue instanceof String) {
+      quote((String) pValue, json);
+    } else {
+      json.append(JSONObject.valueToString(pValue));
+    }
+    return new JsonText(json);
+  }
+
+  /**
+   * Append string as JSON text. The characters are escaped like
+   * JSONObject.quote does, but without an intermediate (synchronized)
+   * buffer.
+   *
+   * @param pText String.
+   * @param pJson Output.
+   */
+  private static void quote(String pText, StringBuilder pJson) {
+    pJson.append('"');
+    char previous = 0;
+    for (int index = 0; index < pText.length(); index++) {
+      char c = pText.charAt(index);
+      switch (c) {
+        case '\\':
+        case '"':
+          pJson.append('\\').append(c);
+          break;
+        case '/':
+          if (previous == '<') {
+            pJson.append('\\');
+          }
+          pJson.append(c);
+          break;
+        case '\b':
+          pJson.append("\\b");
+          break;
+        case '\t':
+          pJson.append("\\t");
+          break;
+        case '\n':
+          pJson.append("\\n");
+          break;
+        case '\f':
+          pJson.append("\\f");
+          break;
+        case '\r':
+          pJson.append("\\r");
+          break;
+        default:
+          if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+            String hex = Integer.toHexString(c);
+            pJson.append("\\u").append("0000", 0, 4 - hex.length()).append(hex);
+          } else {
+            pJson.append(c);
+          }
+      }
+      previous = c;
+    }
+    pJson.append('"');
+  }
+
+  /**
+   * Builds the JSON object of the document. The open elements are JSON
+   * objects, which are accumulated to their parent when closed.
+   */
+  private static class JSONObjectHandler implements ElementHandler {
+
+    /**
+     * Object holding the root element.
+     */
+    private final JSONObject root = new JSONObject();
+    /**
+     * Open elements (last element at the top).
+     */
+    private final Deque<JSONObject> openElements = new ArrayDeque<>();
+
+    @Override
+    public void startElement() {
+      openElements.push(new JSONObject());
+    }
+
+    @Override
+    public void accumulate(String pKey, Object pValue) {
+      openElements.peek().accumulate(pKey, pValue);
+    }
+
+    @Override
+    public void endElement(String pName) {
+      JSONObject element = openElements.pop();
+      JSONObject parent = openElements.isEmpty() ? root : openElements.peek();
+      // Like org.json an array added as first value is wrapped into another array.
+      parent.accumulate(pName, collapse(element));
+    }
+
+    /**
+     * Get object holding the root element.
+     *
+     * @return JSON object.
+     */
+    JSONObject getRoot() {
+      return root;
+    }
+
+    /**
+     * Get value of a closed element.
+     *
+     * @param pElement Attributes, children and content of the element.
+     * @return "" for empty elements, the content for elements with content
+     * only, or the element itself.
+     */
+    private static Object collapse(JSONObject pElement) {
+      if (pElement.length() == 0) {
+        return "";
+      }
+      if (pElement.length() == 1 && pElement.has(CONTENT)) {
+        return pElement.opt(CONTENT);
+      }
+      return pElement;
+    }
+  }
+
+  /**
+   * Writes the JSON text of the document. The values of each open element
+   * are collected per key. A closed element is written once as JSON text
+   * and added to the values of its parent. The text of the root element is
+   * written to the output at the end.
+   */
+  private static class JsonTextHandler implements ElementHandler {
+
+    /**
+     * Members of the object holding the root element.
+     */
+    private final Members root = new Members();
+    /**
+     * Members of the open elements (last element at the top).
+     */
+    private final Deque<Members> openElements = new ArrayDeque<>();
+
+    @Override
+    public void startElement() {
+      openElements.push(new Members());
+    }
+
+    @Override
+    public void accumulate(String pKey, Object pValue) {
+      openElements.peek().accumulate(pKey, toJsonText(pValue), false);
+    }
+
+    @Override
+    public void endElement(String pName) {
+      Members element = openElements.pop();
+      Members parent = openElements.isEmpty() ? root : openElements.peek();
+      if (element.isEmpty()) {
+        parent.accumulate(pName, new JsonText("\"\""), false);
+      } else if (element.isContentOnly()) {
+        parent.accumulate(pName, element.getContent(), element.isContentArray());
+      } else {
+        parent.accumulate(pName, element.toObject(), false);
+      }
+    }
+
+    /**
+     * Write object holding the root element.
+     *
+     * @param pJson Output.
+     * @throws IOException An error occurred.
+     */
+    void writeRoot(Appendable pJson) throws IOException {
+      root.toObject().writeTo(pJson);
+    }
+  }
+
+  /**
+   * Members of an object. The values are collected per key (in order of the
+   * first value of each key), so repeated keys are written as one array when
+   * the object is written.
+   */
+  private static class Members {
+
+    /**
+     * Values of each key.
+     */
+    private final Map<String, Member> members = new LinkedHashMap<>();
+
+    /**
+     * Add value. Like JSONObject.accumulate an array added as first value is
+     * wrapped into another array.
+     *
+     * @param pKey Key.
+     * @param pValue Value as JSON text.
+     * @param pIsArray Value is an array.
+     */
+    void accumulate(String pKey, JsonText pValue, boolean pIsArray) {
+      Member member = members.get(pKey);
+      if (member == null) {
+        member = new Member();
+        member.isArray = pIsArray;
+        members.put(pKey, member);
+      } else {
+        member.isArray = true;
+      }
+      member.values.add(pValue);
+    }
+
+    /**
+     * Object has no members.
+     *
+     * @return True if empty.
+     */
+    boolean isEmpty() {
+      return members.isEmpty();
+    }
+
+    /**
+     * Object holds only 'content'.
+     *
+     * @return True if content is the only member.
+     */
+    boolean isContentOnly() {
+      return members.size() == 1 && members.containsKey(CONTENT);
+    }
+
+    /**
+     * Value of 'content' is an array.
+     *
+     * @return True if array.
+     */
+    boolean isContentArray() {
+      return members.get(CONTENT).isArray;
+    }
+
+    /**
+     * Get value of 'content' as JSON text.
+     *
+     * @return JSON text.
+     */
+    JsonText getContent() {
+      return members.get(CONTENT).toValue();
+    }
+
+    /**
+     * Get object as JSON text. The values are linked into the text (not
+     * copied), so the members can't be used afterwards.
+     *
+     * @return JSON text.
+     */
+    JsonText toObject() {
+      JsonText json = new JsonText(new StringBuilder("{"));
+      boolean first = true;
+      for (Map.Entry<String, Member> entry : members.entrySet()) {
+        if (!first) {
+          json.append(",");
+        }
+        first = false;
+        json.appendQuoted(entry.getKey()).append(":").append(entry.getValue().toValue());
+      }
+      return json.append("}");
+    }
+  }
+
+  /**
+   * Values of a member.
+   */
+  private static class Member {
+
+    /**
+     * Values in order of occurrence.
+     */
+    private final List<JsonText> values = new ArrayList<>(1);
+    /**
+     * Value is an array.
+     */
+    private boolean isArray;
+
+    /**
+     * Get value as JSON text. Several values are written as array.
+     *
+     * @return JSON text.
+     */
+    JsonText toValue() {
+      if (!isArray) {
+        return values.get(0);
+      }
+      JsonText json = new JsonText(new StringBuilder("["));
+      for (int index = 0; index < values.size(); index++) {
+        if (index > 0) {
+          json.append(",");
+        }
+        json.append(values.get(index));
+      }
+      return json.append("]");
+    }
+  }
+
+  /**
+   * JSON text held as chain of fragments. Appending another JSON text links
+   * its fragments, so the text of an element is copied only once: when the
+   * root is written to the output.
+   */
+  private static class JsonText {
+
+    /**
+     * First fragment.
+     */
+    private final Fragment first;
+    /**
+     * Last fragment.
+     */
+    private Fragment last;
+
+    /**
+     * Constructor.
+     *
+     * @param pText Text (StringBuilder if more text may be appended).
+     */
+    JsonText(CharSequence pText) {
+      first = new Fragment(pText);
+      last = first;
+    }
+
+    /**
+     * Append text.
+     *
+     * @param pText Text.
+     * @return This JSON text.
+     */
+    JsonText append(String pText) {
+      if (last.text instanceof StringBuilder) {
+        ((StringBuilder) last.text).append(pText);
+      } else {
+        last.next = new Fragment(new StringBuilder(pText));
+        last = last.next;
+      }
+      return this;
+    }
+
+    /**
+     * Append string as JSON text.
+     *
+     * @param pText String.
+     * @return This JSON text.
+     */
+    JsonText appendQuoted(String pText) {
+      if (!(last.text instanceof StringBuilder)) {
+        last.next = new Fragment(new StringBuilder());
+        last = last.next;
+      }
+      quote(pText, (StringBuilder) last.text);
+      return this;
+    }
+
+    /**
+     * Append JSON text. The given text can't be used afterwards.
+     *
+     * @param pJson JSON text.
+     * @return This JSON text.
+     */
+    JsonText append(JsonText pJson) {
+      last.next = pJson.first;
+      last = pJson.last;
+      return this;
+    }
+
+    /**
+     * Write JSON text.
+     *
+     * @param pJson Output.
+     * @throws IOException An error occurred.
+     */
+    void writeTo(Appendable pJson) throws IOException {
+      for (Fragment fragment = first; fragment != null; fragment = fragment.next) {
+        pJson.append(fragment.text);
+      }
+    }
+  }
+
+  /**
+   * Fragment of a JSON text.
+   */
+  private static class Fragment {
+
+    /**
+     * Text of the fragment (StringBuilder if more text may be appended).
+     */
+    private final CharSequence text;
+    /**
+     * Next fragment.
+     */
+    private Fragment next;
+
+    /**
+     * Constructor.
+     *
+     * @param pText Text of the fragment.
+     */
+    Fragment(CharSequence pText) {
+      text = pText;
+    }
+  }
+}
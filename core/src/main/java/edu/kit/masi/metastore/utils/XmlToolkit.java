@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.exception.MetaStoreException;
+import edu.kit.masi.metastore.exception.StatusCode;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Shared XML infrastructure. Factories are looked up only once. Parsers,
+ * serializers, schema factories and compiled XPath expressions are not thread
+ * safe and therefore reused per thread. StAX factories are thread safe after
+ * configuration and shared by all threads.
+ *
+ * @author hartmann-v
+ */
+public final class XmlToolkit {
+
+  /**
+   * Feature for deferred expansion of DOM nodes.
+   */
+  private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+  /**
+   * Property of the JDK StAX implementation for reporting CDATA sections.
+   */
+  private static final String REPORT_CDATA_EVENT = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+  /**
+   * Factory for DOM parsers.
+   */
+  private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = createDocumentBuilderFactory();
+  /**
+   * Factory for serializers.
+   */
+  private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+  /**
+   * Factory for XPath expressions.
+   */
+  private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+  /**
+   * DOM parser of the current thread.
+   */
+  private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+    try {
+      synchronized (DOCUMENT_BUILDER_FACTORY) {
+        return DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+      }
+    } catch (ParserConfigurationException ex) {
+      throw new IllegalStateException("Error creating DOM parser!", ex);
+    }
+  });
+  /**
+   * Serializer of the current thread.
+   */
+  private static final ThreadLocal<Transformer> SERIALIZER = ThreadLocal.withInitial(() -> {
+    try {
+      synchronized (TRANSFORMER_FACTORY) {
+        return TRANSFORMER_FACTORY.newTransformer();
+      }
+    } catch (TransformerConfigurationException ex) {
+      throw new IllegalStateException("Error creating serializer!", ex);
+    }
+  });
+  /**
+   * Schema factory of the current thread.
+   */
+  private static final ThreadLocal<SchemaFactory> SCHEMA_FACTORY
+          = ThreadLocal.withInitial(() -> SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI));
+  /**
+   * Factory for StAX readers.
+   */
+  private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+  /**
+   * Factory for StAX readers reporting CDATA sections as separate events.
+   */
+  private static final XMLInputFactory CDATA_XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+  /**
+   * Factory for StAX writers.
+   */
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+  /**
+   * Factory for StAX writers declaring missing namespaces.
+   */
+  private static final XMLOutputFactory REPAIRING_XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+  /**
+   * Factory for StAX events.
+   */
+  private static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory.newInstance();
+
+  static {
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    CDATA_XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    if (CDATA_XML_INPUT_FACTORY.isPropertySupported(REPORT_CDATA_EVENT)) {
+      CDATA_XML_INPUT_FACTORY.setProperty(REPORT_CDATA_EVENT, true);
+    }
+    REPAIRING_XML_OUTPUT_FACTORY.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+  }
+
+  /**
+   * Precompiled XPath expressions.
+   */
+  public enum Expression {
+    /**
+     * All sections (elements inside xmlData).
+     */
+    XML_DATA_CHILDREN("//*[local-name()='xmlData']/*"),
+    /**
+     * All children of the METS root element.
+     */
+    METS_CHILDREN("//*[local-name()='mets']/*");
+
+    /**
+     * Compiled expression of the current thread.
+     */
+    private final ThreadLocal<XPathExpression> expression;
+
+    /**
+     * Constructor.
+     *
+     * @param pExpression XPath expression.
+     */
+    Expression(String pExpression) {
+      expression = ThreadLocal.withInitial(() -> {
+        try {
+          synchronized (XPATH_FACTORY) {
+            return XPATH_FACTORY.newXPath().compile(pExpression);
+          }
+        } catch (XPathExpressionException ex) {
+          throw new IllegalStateException("Invalid XPath expression '" + pExpression + "'!", ex);
+        }
+      });
+    }
+  }
+
+  /**
+   * Utility class.
+   */
+  private XmlToolkit() {
+  }
+
+  /**
+   * Parse xml string to a (namespace aware) DOM.
+   *
+   * @param pXml xml document as string.
+   * @return DOM of xml document.
+   * @throws MetaStoreException Document is not well-formed (BAD_REQUEST).
+   */
+  public static Document parse(String pXml) throws MetaStoreException {
+    DocumentBuilder builder = DOCUMENT_BUILDER.get();
+    try {
+      return builder.parse(new InputSource(new StringReader(pXml)));
+    } catch (SAXException | IOException e) {
+      // Don't echo the (possibly large) document.
+      throw new MetaStoreException("Error while parsing XML document! - " + e.getMessage(), e,
+              StatusCode.BAD_REQUEST.getStatusCode());
+    } finally {
+      builder.reset();
+    }
+  }
+
+  /**
+   * Serialize xml node.
+   *
+   * @param pNode xml node.
+   * @return String representation of the node.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static String serialize(Node pNode) throws MetaStoreException {
+    Transformer serializer = SERIALIZER.get();
+    try {
+      StringWriter stringWriter = new StringWriter();
+      serializer.transform(new DOMSource(pNode), new StreamResult(stringWriter));
+      return stringWriter.toString();
+    } catch (TransformerException e) {
+      throw new MetaStoreException("Error tranforming node to string! - " + e.getMessage(), e);
+    } finally {
+      serializer.reset();
+    }
+  }
+
+  /**
+   * Compile xsd document.
+   *
+   * @param pXsd xsd document as string.
+   * @return Compiled schema.
+   * @throws SAXException Schema is not valid.
+   */
+  public static Schema newSchema(String pXsd) throws SAXException {
+    return SCHEMA_FACTORY.get().newSchema(new StreamSource(new StringReader(pXsd)));
+  }
+
+  /**
+   * Select nodes with precompiled XPath expression.
+   *
+   * @param pExpression XPath expression.
+   * @param pContext Context node.
+   * @return All selected nodes.
+   * @throws MetaStoreException An error occurred.
+   */
+  public static NodeList selectNodes(Expression pExpression, Node pContext) throws MetaStoreException {
+    try {
+      return (NodeList) pExpression.expression.get().evaluate(pContext, XPathConstants.NODESET);
+    } catch (XPathExpressionException e) {
+      throw new MetaStoreException(e);
+    }
+  }
+
+  /**
+   * Get shared factory for StAX readers. (External entities are not
+   * supported.)
+   *
+   * @return Factory.
+   */
+  public static XMLInputFactory getXmlInputFactory() {
+    return XML_INPUT_FACTORY;
+  }
+
+  /**
+   * Get shared factory for StAX readers reporting CDATA sections as CDATA
+   * events. (External entities are not supported.)
+   *
+   * @return Factory.
+   */
+  public static XMLInputFactory getCdataReportingXmlInputFactory() {
+    return CDATA_XML_INPUT_FACTORY;
+  }
+
+  /**
+   * Get shared factory for StAX writers.
+   *
+   * @param pRepairNamespaces Declare missing namespaces or not.
+   * @return Factory.
+   */
+  public static XMLOutputFactory getXmlOutputFactory(boolean pRepairNamespaces) {
+    return pRepairNamespaces ? REPAIRING_XML_OUTPUT_FACTORY : XML_OUTPUT_FACTORY;
+  }
+
+  /**
+   * Get shared factory for StAX events.
+   *
+   * @return Factory.
+   */
+  public static XMLEventFactory getXmlEventFactory() {
+    return XML_EVENT_FACTORY;
+  }
+
+  /**
+   * Create factory for DOM parsers.
+   *
+   * @return Namespace aware factory.
+   */
+  private static DocumentBuilderFactory createDocumentBuilderFactory() {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    try {
+      // Deferred nodes are expanded on first access which is not thread safe.
+      // (Sections of the document are validated in parallel.)
+      factory.setFeature(DEFER_NODE_EXPANSION, false);
+    } catch (ParserConfigurationException ex) {
+      throw new IllegalStateException("Error configuring DOM parser!", ex);
+    }
+    return factory;
+  }
+}
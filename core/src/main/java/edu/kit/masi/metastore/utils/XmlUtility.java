@@ -16,25 +16,17 @@
 package edu.kit.masi.metastore.utils;
 
 import edu.kit.masi.metastore.exception.MetaStoreException;
-import java.io.ByteArrayInputStream;
+import edu.kit.masi.metastore.exception.StatusCode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Result;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -52,6 +44,23 @@ public class XmlUtility {
    * Logger.
    */
 	public static final Logger LOGGER = LoggerFactory.getLogger(XmlUtility.class);
+  /**
+   * Maximum number of validators held per thread.
+   */
+  private static final int MAX_VALIDATORS_PER_THREAD = 16;
+  /**
+   * Validators of the current thread for the recently used compiled schemas.
+   * (Validators are not thread safe.) Schema doesn't override equals, so the
+   * schemas are compared by identity. A validator references its schema, so
+   * the number of validators is bounded (least recently used are removed).
+   */
+  private static final ThreadLocal<Map<Schema, Validator>> VALIDATORS = ThreadLocal.withInitial(
+          () -> new LinkedHashMap<Schema, Validator>(MAX_VALIDATORS_PER_THREAD, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Schema, Validator> pEldest) {
+      return size() > MAX_VALIDATORS_PER_THREAD;
+    }
+  });
 
   /** 
    * Transform Stream into string.
@@ -79,24 +88,80 @@ public class XmlUtility {
    * @throws MetaStoreException  An error occurred.
    */
   public static boolean validate(String xmlString, String xsdString) throws MetaStoreException {
+    return validate(xmlString, compileSchema(xsdString));
+  }
+
+  /**
+   * Validate xml document with provided (compiled) schema.
+   * The validator is reused by the current thread.
+   * @param xmlString xml document as string.
+   * @param schema compiled schema.
+   * @return valid or not.
+   * @throws MetaStoreException  An error occurred.
+   */
+  public static boolean validate(String xmlString, Schema schema) throws MetaStoreException {
+    IngestStage.PARSE.increment();
+    return validate(new StreamSource(new StringReader(xmlString)), schema);
+  }
+
+  /**
+   * Validate already parsed xml node with provided (compiled) schema.
+   * The node is validated in place without serializing or parsing it again.
+   * @param node xml node (document or element).
+   * @param schema compiled schema.
+   * @return valid or not.
+   * @throws MetaStoreException  An error occurred.
+   */
+  public static boolean validate(Node node, Schema schema) throws MetaStoreException {
+    return validate(new DOMSource(node), schema);
+  }
+
+  /**
+   * Validate xml source with provided (compiled) schema.
+   * The validator is reused by the current thread.
+   * @param xml xml source.
+   * @param schema compiled schema.
+   * @return valid or not.
+   * @throws MetaStoreException  An error occurred.
+   */
+  private static boolean validate(Source xml, Schema schema) throws MetaStoreException {
     boolean isValid = false;
+    IngestStage.VALIDATION.increment();
+    Validator validator = VALIDATORS.get().computeIfAbsent(schema, Schema::newValidator);
     try {
-      SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-      Source xsd = new StreamSource(new StringReader(xsdString));
-      Schema schema = factory.newSchema(xsd);
-      Validator validator = schema.newValidator();
-      Source xml = new StreamSource(new StringReader(xmlString));
       validator.validate(xml);
       LOGGER.debug("validate internal xml file maybe using jaxb or predefined using DOM parser");
       isValid = true;
-    } catch (IOException | SAXException e) {
+    } catch (SAXException e) {
+      // Document is not well-formed or not valid.
       LOGGER.error("Error while validating", e);
-      LOGGER.error("Document: " + xmlString);
-      throw new MetaStoreException("Document is not valid! - " + e.getMessage());
+      throw new MetaStoreException("Document is not valid! - " + e.getMessage(), e,
+              StatusCode.BAD_REQUEST.getStatusCode());
+    } catch (IOException e) {
+      LOGGER.error("Error while validating", e);
+      throw new MetaStoreException("Document is not valid! - " + e.getMessage(), e);
+    } finally {
+      validator.reset();
     }
     return isValid;
   }
 
+  /**
+   * Compile xsd document. The compiled schema is thread safe and should be
+   * reused for all validations against this xsd.
+   * @param xsdString xsd document as string.
+   * @return compiled schema.
+   * @throws MetaStoreException  An error occurred.
+   */
+  public static Schema compileSchema(String xsdString) throws MetaStoreException {
+    try {
+      return XmlToolkit.newSchema(xsdString);
+    } catch (SAXException e) {
+      LOGGER.error("Error while compiling schema", e);
+      throw new MetaStoreException("Schema is not valid! - " + e.getMessage());
+    }
+  }
+
   /**
    * Transform string to W3C document.
    * @param xmlString XML as string.
@@ -104,16 +169,8 @@ public class XmlUtility {
    * @throws MetaStoreException  An error occurred.
    */
   public static Document strToXmlDocument(String xmlString) throws MetaStoreException {
-    try {
-      ByteArrayInputStream input = new ByteArrayInputStream(xmlString.getBytes("UTF-8"));
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      dbFactory.setNamespaceAware(true);
-      DocumentBuilder dBuilder;
-      dBuilder = dbFactory.newDocumentBuilder();
-      return dBuilder.parse(input);
-    } catch (ParserConfigurationException | SAXException | IOException e) {
-      throw new MetaStoreException("Error while parsing String: " + xmlString, e);
-    }
+    IngestStage.PARSE.increment();
+    return XmlToolkit.parse(xmlString);
   }
   /**
    * Write xml document as string.
@@ -132,17 +189,8 @@ public class XmlUtility {
    * @throws MetaStoreException An error occurred.
    */
   public static String xmlToString(Node node) throws MetaStoreException {
-    try {
-      Source source = new DOMSource(node);
-      StringWriter stringWriter = new StringWriter();
-      Result result = new StreamResult(stringWriter);
-      TransformerFactory factory = TransformerFactory.newInstance();
-      Transformer transformer = factory.newTransformer();
-      transformer.transform(source, result);
-      return stringWriter.getBuffer().toString();
-    } catch (TransformerException e) {
-      throw new MetaStoreException("Error tranforming node to string! - " + e.getMessage(), e);
-    }
+    IngestStage.SERIALIZATION.increment();
+    return XmlToolkit.serialize(node);
   }
   
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore;
+
+import edu.kit.masi.metastore.db.ArangoDB;
+import edu.kit.masi.metastore.utils.ArangoPropertyHandler;
+import edu.kit.masi.metastore.utils.MetaStoreUtility;
+import edu.kit.masi.metastore.utils.MetsUtility;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark storing documents with 1, 8 and 32 concurrent threads. Shows how
+ * throughput scales with the number of connections to the database. The
+ * benchmark needs a running arangodb and is skipped unless it is enabled:
+ * <pre>
+ * mvn test -Dtest=StoreBenchmarkTest -Dbenchmark=true [-Dbenchmark.mets=file] [-Dbenchmark.documents=1000]
+ * </pre>
+ * The documents are stored in a database of their own and deleted after each
+ * run.
+ *
+ * @author hartmann-v
+ */
+public class StoreBenchmarkTest {
+
+  /**
+   * Logger.
+   */
+  private static final Logger LOGGER = LoggerFactory.getLogger(StoreBenchmarkTest.class);
+  /**
+   * Numbers of concurrent threads used for benchmark.
+   */
+  private static final int[] CONCURRENT_STORES = {1, 8, 32};
+  /**
+   * Database used for benchmark (never the configured one).
+   */
+  private static final String BENCHMARK_DATABASE = "masi_benchmark";
+  /**
+   * METS file stored if no file is given.
+   */
+  private static final String DEFAULT_METS_FILE = "/xmltojson/mets.xml";
+  /**
+   * Number of documents stored per run if not given.
+   */
+  private static final int DEFAULT_NO_OF_DOCUMENTS = 1000;
+
+  /**
+   * Run benchmark. System properties:
+   * <ul>
+   * <li>benchmark: true to enable benchmark</li>
+   * <li>benchmark.mets: METS file (xml)</li>
+   * <li>benchmark.documents: Number of documents stored per run</li>
+   * </ul>
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testStoreThroughput() throws Exception {
+    Assume.assumeTrue("Benchmark is disabled (enable with -Dbenchmark=true)", Boolean.getBoolean("benchmark"));
+    String metsFile = readMetsFile();
+    int noOfDocuments = Integer.getInteger("benchmark.documents", DEFAULT_NO_OF_DOCUMENTS);
+    ArangoPropertyHandler properties = new ArangoPropertyHandler();
+    properties.loadProperty();
+    properties.setDbName(BENCHMARK_DATABASE);
+    ArangoDB arango = new ArangoDB(properties);
+    String runId = Long.toString(System.currentTimeMillis());
+    try {
+      for (int noOfThreads : CONCURRENT_STORES) {
+        List<String> storedKeys = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+        try {
+          List<String> hashedKeys = new ArrayList<>();
+          List<Future<String>> results = new ArrayList<>();
+          long start = System.nanoTime();
+          for (int index = 0; index < noOfDocuments; index++) {
+            String hashedKey = MetaStoreUtility.getHashValue("benchmark_" + runId + "_" + noOfThreads + "_" + index);
+            hashedKeys.add(hashedKey);
+            results.add(executor.submit(() -> arango.postXML(hashedKey, metsFile, MetsUtility.METS_NAMESPACE)));
+          }
+          ExecutionException firstError = null;
+          for (int index = 0; index < results.size(); index++) {
+            try {
+              results.get(index).get();
+              storedKeys.add(hashedKeys.get(index));
+            } catch (ExecutionException ex) {
+              firstError = firstError == null ? ex : firstError;
+            }
+          }
+          long duration = System.nanoTime() - start;
+          if (firstError != null) {
+            throw firstError;
+          }
+          LOGGER.info(String.format("%2d thread(s): %d documents in %d ms -> %.1f documents/s",
+                  noOfThreads, noOfDocuments, duration / 1000000, noOfDocuments * 1.0e9 / duration));
+        } finally {
+          executor.shutdown();
+          for (String hashedKey : storedKeys) {
+            arango.deleteDocument(hashedKey);
+          }
+        }
+      }
+    } finally {
+      arango.shutdown();
+    }
+  }
+
+  /**
+   * Read METS file given by system property 'benchmark.mets' or the default
+   * file from classpath.
+   *
+   * @return Content of the METS file.
+   * @throws IOException An error occurred.
+   */
+  private String readMetsFile() throws IOException {
+    String metsFile = System.getProperty("benchmark.mets");
+    if (metsFile != null) {
+      return FileUtils.readFileToString(new File(metsFile));
+    }
+    try (InputStream is = getClass().getResourceAsStream(DEFAULT_METS_FILE)) {
+      assertNotNull("Missing test file " + DEFAULT_METS_FILE, is);
+      return IOUtils.toString(is, "UTF-8");
+    }
+  }
+}
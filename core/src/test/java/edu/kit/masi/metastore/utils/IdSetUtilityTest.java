@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for IdSetUtility.
+ *
+ * @author hartmann-v
+ */
+public class IdSetUtilityTest {
+
+  /**
+   * Test creation of sorted sets from IDs with duplicates.
+   */
+  @Test
+  public void testToSortedSet() {
+    assertArrayEquals(new String[0], IdSetUtility.toSortedSet(Collections.emptyList()));
+    assertArrayEquals(new String[]{"a"}, IdSetUtility.toSortedSet(Arrays.asList("a", "a", "a")));
+    assertArrayEquals(new String[]{"a", "b", "c"}, IdSetUtility.toSortedSet(Arrays.asList("c", "a", "b", "a", "c")));
+  }
+
+  /**
+   * Test intersection including empty sets.
+   */
+  @Test
+  public void testIntersect() {
+    assertArrayEquals(new String[0], IdSetUtility.intersect(Collections.emptyList()));
+    assertArrayEquals(new String[0], IdSetUtility.intersect(sets(new String[]{"a", "b"}, new String[0])));
+    assertArrayEquals(new String[]{"a", "b"}, IdSetUtility.intersect(sets(new String[]{"a", "b"})));
+    assertArrayEquals(new String[]{"b", "d"}, IdSetUtility.intersect(sets(
+            new String[]{"a", "b", "c", "d"}, new String[]{"b", "d", "e"}, new String[]{"b", "c", "d"})));
+    assertArrayEquals(new String[]{"a", "b"}, IdSetUtility.intersect(sets(new String[]{"a", "b"}, new String[]{"a", "b"})));
+  }
+
+  /**
+   * Test union including empty sets and IDs contained in several sets.
+   */
+  @Test
+  public void testUnite() {
+    assertArrayEquals(new String[0], IdSetUtility.unite(Collections.emptyList()));
+    assertArrayEquals(new String[0], IdSetUtility.unite(sets(new String[0], new String[0])));
+    assertArrayEquals(new String[]{"a", "b"}, IdSetUtility.unite(sets(new String[0], new String[]{"a", "b"})));
+    assertArrayEquals(new String[]{"a", "b"}, IdSetUtility.unite(sets(new String[]{"a", "b"}, new String[]{"a", "b"})));
+    assertArrayEquals(new String[]{"a", "b", "c", "d", "e"}, IdSetUtility.unite(sets(
+            new String[]{"b", "d"}, new String[]{"a", "b", "e"}, new String[]{"c", "d", "e"})));
+  }
+
+  /**
+   * Test paging of a sorted set.
+   */
+  @Test
+  public void testPage() {
+    String[] set = {"a", "b", "c", "d"};
+    assertArrayEquals(set, IdSetUtility.page(set, null, 0));
+    assertArrayEquals(new String[]{"a", "b"}, IdSetUtility.page(set, null, 2));
+    assertArrayEquals(new String[]{"c", "d"}, IdSetUtility.page(set, "b", 2));
+    // Cursor not contained in the set.
+    assertArrayEquals(new String[]{"c"}, IdSetUtility.page(set, "bb", 1));
+    assertArrayEquals(new String[0], IdSetUtility.page(set, "d", 2));
+    assertArrayEquals(new String[0], IdSetUtility.page(new String[0], "a", 2));
+  }
+
+  /**
+   * Test that the order of the IDs is the order of their search keys (hex
+   * encoded, compared by the database) even for characters outside the
+   * basic multilingual plane.
+   */
+  @Test
+  public void testOrderOfSearchKeys() {
+    List<String> ids = Arrays.asList("b", "a", "ab", "A", "a b", "\u00e4", "\uffe0", "\ud83d\ude00", "10", "9", "");
+    String[] sortedIds = IdSetUtility.toSortedSet(ids);
+    List<String> keys = new ArrayList<>();
+    for (String id : sortedIds) {
+      String key = IdSetUtility.toKey(id);
+      assertTrue(key.matches("[0-9a-f]*"));
+      keys.add(key);
+    }
+    List<String> sortedKeys = new ArrayList<>(keys);
+    Collections.sort(sortedKeys);
+    assertEquals(sortedKeys, keys);
+    // String.compareTo sorts surrogate pairs before other characters.
+    assertTrue(IdSetUtility.compare("\ud83d\ude00", "\uffe0") > 0);
+    assertArrayEquals(new String[]{"\ud83d\ude00"}, IdSetUtility.page(sortedIds, "\uffe0", 1));
+  }
+
+  /**
+   * Create list of sets.
+   *
+   * @param pSets Sorted sets.
+   * @return List containing all sets.
+   */
+  private static List<String[]> sets(String[]... pSets) {
+    return new ArrayList<>(Arrays.asList(pSets));
+  }
+}
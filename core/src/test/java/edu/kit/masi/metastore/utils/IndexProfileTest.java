@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for IndexProfile.
+ *
+ * @author hartmann-v
+ */
+public class IndexProfileTest {
+
+  /**
+   * JSON representation of a section used by most tests.
+   */
+  private static final String SECTION = "{\"oai_dc:dc\":{"
+          + "\"xmlns:oai_dc\":\"http://www.openarchives.org/OAI/2.0/oai_dc/\","
+          + "\"xmlns:dc\":\"http://purl.org/dc/elements/1.1/\","
+          + "\"dc:title\":\"Measurement\","
+          + "\"dc:creator\":[\"Doe, John\",\"Doe, Jane\"],"
+          + "\"dc:relation\":[{\"dc:title\":\"Sample\",\"id\":42},{\"dc:title\":\"Setup\"}],"
+          + "\"other:title\":\"Other\"}}";
+
+  /**
+   * Test that profile ALL selects the same paths as the former
+   * MetaStoreUtility.applyIndexing except namespace declarations.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testAllMatchesFormerIndexing() throws Exception {
+    JSONObject mets = new JSONObject(readResource("/xmltojson/mets.json"));
+    Set<String> expResult = new HashSet<>();
+    for (String path : applyFormerIndexing(mets)) {
+      if (!path.matches(".*\\.xmlns(:[^.]*)?(\\..*)?")) {
+        expResult.add(path);
+      }
+    }
+    assertFalse(expResult.isEmpty());
+    assertEquals(expResult, IndexProfile.ALL.getIndexPaths(mets));
+  }
+
+  /**
+   * Test '**' matching any number of levels.
+   */
+  @Test
+  public void testAnyLevels() {
+    JSONObject section = new JSONObject(SECTION);
+    IndexProfile profile = new IndexProfile(Collections.singletonList("**.dc:title"));
+    assertEquals(asSet("json.oai_dc:dc.dc:title", "json.oai_dc:dc.dc:relation.dc:title"),
+            profile.getIndexPaths(section));
+    assertSearchText(profile.buildSearchText(section), "Measurement", "Sample", "Setup");
+  }
+
+  /**
+   * Test '*' inside a name.
+   */
+  @Test
+  public void testWildcardInName() {
+    JSONObject section = new JSONObject(SECTION);
+    IndexProfile profile = new IndexProfile(Collections.singletonList("oai_dc:dc.*:title"));
+    assertEquals(asSet("json.oai_dc:dc.dc:title", "json.oai_dc:dc.other:title"), profile.getIndexPaths(section));
+  }
+
+  /**
+   * Test that arrays are transparent and a path selects all values below.
+   */
+  @Test
+  public void testArrays() {
+    JSONObject section = new JSONObject(SECTION);
+    IndexProfile profile = new IndexProfile(Arrays.asList("oai_dc:dc.dc:creator", "oai_dc:dc.dc:relation"));
+    assertEquals(asSet("json.oai_dc:dc.dc:creator", "json.oai_dc:dc.dc:relation.dc:title",
+            "json.oai_dc:dc.dc:relation.id"), profile.getIndexPaths(section));
+    assertSearchText(profile.buildSearchText(section), "Doe, John", "Doe, Jane", "Sample", "42", "Setup");
+  }
+
+  /**
+   * Test that namespace declarations are never selected.
+   */
+  @Test
+  public void testNamespaceDeclarationsSkipped() {
+    JSONObject section = new JSONObject(SECTION);
+    for (String path : IndexProfile.ALL.getIndexPaths(section)) {
+      assertFalse(path, path.contains("xmlns"));
+    }
+    String searchText = new IndexProfile(Collections.singletonList("oai_dc:dc.*")).buildSearchText(section);
+    assertFalse(searchText, searchText.contains("http://"));
+  }
+
+  /**
+   * Test that an empty profile selects nothing.
+   */
+  @Test
+  public void testEmptyProfile() {
+    JSONObject section = new JSONObject(SECTION);
+    IndexProfile profile = new IndexProfile(Collections.emptyList());
+    assertTrue(profile.getIndexPaths(section).isEmpty());
+    assertEquals("", profile.buildSearchText(section));
+  }
+
+  /**
+   * Create set.
+   *
+   * @param pValues Values.
+   * @return Set containing all values.
+   */
+  private static Set<String> asSet(String... pValues) {
+    return new HashSet<>(Arrays.asList(pValues));
+  }
+
+  /**
+   * Check search text independent of the order of the keys.
+   *
+   * @param pSearchText Search text.
+   * @param pValues All expected values.
+   */
+  private static void assertSearchText(String pSearchText, String... pValues) {
+    assertEquals(pSearchText, String.join(" ", pValues).length(), pSearchText.length());
+    for (String value : pValues) {
+      assertTrue(pSearchText, pSearchText.contains(value));
+    }
+  }
+
+  /**
+   * Read test file from classpath.
+   *
+   * @param pName Name of the file.
+   * @return Content of the file.
+   * @throws IOException An error occurred.
+   */
+  private String readResource(String pName) throws IOException {
+    try (InputStream is = getClass().getResourceAsStream(pName)) {
+      assertNotNull("Missing test file " + pName, is);
+      return IOUtils.toString(is, "UTF-8");
+    }
+  }
+
+  /**
+   * Index paths as selected by the former MetaStoreUtility.applyIndexing.
+   *
+   * @param pJson JSON object.
+   * @return Paths of all leaf values.
+   */
+  private static Set<String> applyFormerIndexing(JSONObject pJson) {
+    Set<String> indexSet = new HashSet<>();
+    Iterator<?> keys = pJson.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      if (pJson.get(key) instanceof JSONObject) {
+        getFormerRecursiveKeys(pJson.getJSONObject(key), key, indexSet);
+      }
+    }
+    return indexSet;
+  }
+
+  /**
+   * Collect paths as done by the former MetaStoreUtility.getRecursiveKeys.
+   *
+   * @param pJson JSON object.
+   * @param pPath Path of the object.
+   * @param pIndexSet Set with all paths.
+   * @return Empty string.
+   */
+  private static String getFormerRecursiveKeys(JSONObject pJson, String pPath, Set<String> pIndexSet) {
+    Iterator<?> keys = pJson.keys();
+    while (keys.hasNext()) {
+      String key = (String) keys.next();
+      StringBuilder pathKey = new StringBuilder();
+      pathKey.append(pPath).append(".").append(key);
+      Object value = pJson.get(key);
+      if (value instanceof JSONArray) {
+        JSONArray array = (JSONArray) value;
+        for (int index = 0; index < array.length(); index++) {
+          if (array.get(index) instanceof JSONObject) {
+            pathKey.append(".").append(getFormerRecursiveKeys(array.getJSONObject(index), pathKey.toString(), pIndexSet));
+          }
+        }
+      }
+      if (value instanceof JSONObject) {
+        pathKey.append(".").append(getFormerRecursiveKeys((JSONObject) value, pathKey.toString(), pIndexSet));
+      }
+      if (!pathKey.toString().endsWith(".")) {
+        pIndexSet.add("json." + pathKey.toString().replaceAll("\\.\\.+", "."));
+      }
+    }
+    return "";
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import edu.kit.masi.metastore.model.PreparedSection;
+import edu.kit.masi.metastore.model.SectionDocument;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the stages of the ingest pipeline. Splitting and preparing the
+ * sections of a METS document has to parse the document only once.
+ *
+ * @author hartmann-v
+ */
+public class IngestStageTest {
+
+  /**
+   * METS document used for all tests.
+   */
+  private static final String METS_FILE = "/xmltojson/mets.xml";
+  /**
+   * Digital object ID of the METS document.
+   */
+  private static final String DIGITAL_OBJECT_ID = "ingestStageTest";
+  /**
+   * Prefix used for all sections.
+   */
+  private static final String PREFIX = "test";
+
+  /**
+   * Reset counters of all stages.
+   */
+  @Before
+  public void setUp() {
+    IngestStage.resetAll();
+  }
+
+  /**
+   * Test that a METS document is parsed once into a DOM and the sections are
+   * prepared from its nodes.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testPrepareSectionsOfParsedDocument() throws Exception {
+    String metsXml = readResource(METS_FILE);
+    Document document = XmlUtility.strToXmlDocument(metsXml);
+    List<SectionDocument> sections = MetsSplitter.getAllSections(document, DIGITAL_OBJECT_ID);
+    assertFalse(sections.isEmpty());
+    prepareSections(sections);
+    assertEquals(1, IngestStage.PARSE.getCount());
+    // Each section is serialized once for storing and converted once.
+    assertEquals(sections.size(), IngestStage.SERIALIZATION.getCount());
+    assertEquals(sections.size(), IngestStage.JSON_CONVERSION.getCount());
+  }
+
+  /**
+   * Test that a METS document is read once as stream and the sections are
+   * prepared from the serialized xml.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testPrepareSectionsOfStream() throws Exception {
+    String metsXml = readResource(METS_FILE);
+    List<SectionDocument> sections = new MetsSplitter(metsXml.length()).getAllSections(metsXml, DIGITAL_OBJECT_ID);
+    assertFalse(sections.isEmpty());
+    prepareSections(sections);
+    assertEquals(1, IngestStage.PARSE.getCount());
+    assertEquals(0, IngestStage.SERIALIZATION.getCount());
+    assertEquals(sections.size(), IngestStage.JSON_CONVERSION.getCount());
+  }
+
+  /**
+   * Prepare all sections for storing.
+   *
+   * @param pSections Sections of the METS document.
+   * @throws Exception An error occurred.
+   */
+  private void prepareSections(List<SectionDocument> pSections) throws Exception {
+    for (SectionDocument section : pSections) {
+      PreparedSection preparedSection = MetaStoreUtility.prepareNestedSection(section, PREFIX, IndexProfile.ALL);
+      assertEquals(section.getSectionId(), preparedSection.getDocument().getId());
+      assertEquals(DIGITAL_OBJECT_ID, preparedSection.getDocument().getMainXmlHandler());
+      assertNotNull(preparedSection.getDocument().getXmlData());
+      assertNotNull(preparedSection.getDocument().getSearchText());
+    }
+  }
+
+  /**
+   * Read test file from classpath.
+   *
+   * @param pName Path of the file.
+   * @return Content of the file.
+   * @throws IOException An error occurred.
+   */
+  private String readResource(String pName) throws IOException {
+    try (InputStream is = getClass().getResourceAsStream(pName)) {
+      assertNotNull("Missing test file " + pName, is);
+      return IOUtils.toString(is, "UTF-8");
+    }
+  }
+}
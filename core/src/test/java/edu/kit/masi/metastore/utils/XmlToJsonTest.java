@@ -0,0 +1,276 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.metastore.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.XML;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compatibility tests for XmlToJson. The golden files (*.json) were created
+ * with org.json XML.toJSONObject from the corresponding *.xml files.
+ *
+ * @author hartmann-v
+ */
+public class XmlToJsonTest {
+
+  /**
+   * Path to the test files.
+   */
+  private static final String PATH = "/xmltojson/";
+  /**
+   * All test files (without extension).
+   */
+  private static final String[] GOLDEN_FILES = {"mets", "mixedContent", "valueCoercion", "cdata"};
+  /**
+   * Number of runs per time measurement (the best time is used).
+   */
+  private static final int RUNS = 3;
+
+  /**
+   * Test JSON text against golden files.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testToJsonMatchesGoldenFiles() throws Exception {
+    for (String name : GOLDEN_FILES) {
+      JSONObject expResult = new JSONObject(readResource(name + ".json"));
+      JSONObject result = new JSONObject(XmlToJson.toJson(readResource(name + ".xml")));
+      assertSimilar(name, expResult, result);
+    }
+  }
+
+  /**
+   * Test JSON object against org.json XML.toJSONObject.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testToJSONObjectMatchesOrgJson() throws Exception {
+    for (String name : GOLDEN_FILES) {
+      String xml = readResource(name + ".xml");
+      assertSimilar(name, XML.toJSONObject(xml), XmlToJson.toJSONObject(xml));
+    }
+  }
+
+  /**
+   * Test some special cases against org.json XML.toJSONObject.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testSpecialCases() throws Exception {
+    String[] documents = {"<a/>", "<a></a>", "<a x=\"1\"/>", "<a>x<b/>y</a>", "<a>x<!--c-->y</a>",
+      "<r><a>1</a><a>x<!--c-->y</a></r>", "<a><b/><b/></a>", "<a>-0</a>", "<a>00</a>", "<a>1.0</a>",
+      "<r><a>1</a><b>x</b><a>2</a><c d=\"1\"/><a/><b>y<!--c-->z</b></r>"};
+    for (String xml : documents) {
+      assertSimilar(xml, XML.toJSONObject(xml), XmlToJson.toJSONObject(xml));
+      assertSimilar(xml, XML.toJSONObject(xml), new JSONObject(XmlToJson.toJson(xml)));
+    }
+  }
+
+  /**
+   * Test that the conversion time grows linearly with the number of repeated
+   * (interleaved) siblings and with the depth of the document. A quadratic
+   * conversion would need 64 times as long for 8 times the size.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testScalesLinearly() throws Exception {
+    assertScalesLinearly("Interleaved siblings", interleavedSiblings(20000), interleavedSiblings(160000));
+    assertScalesLinearly("Nested elements", nestedElements(500), nestedElements(4000));
+  }
+
+  /**
+   * Test that the conversion is not slower than org.json (parsing and
+   * writing) for a large file group and for interleaved siblings.
+   *
+   * @throws Exception An error occurred.
+   */
+  @Test
+  public void testNotSlowerThanOrgJson() throws Exception {
+    for (String xml : new String[]{fileGroup(2000), interleavedSiblings(100000)}) {
+      assertSimilar("Large document", XML.toJSONObject(xml), new JSONObject(XmlToJson.toJson(xml)));
+      long time = bestTimeOfToJson(xml);
+      long timeOrgJson = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        long start = System.nanoTime();
+        assertNotNull(XML.toJSONObject(xml).toString());
+        timeOrgJson = Math.min(timeOrgJson, System.nanoTime() - start);
+      }
+      // Allow some variance of the measurement.
+      assertTrue(time + " ns vs. " + timeOrgJson + " ns (org.json)", time < timeOrgJson * 2);
+    }
+  }
+
+  /**
+   * Compare conversion time of a small and a large (8 times the size)
+   * document. The large document is converted first to warm up the JIT.
+   *
+   * @param pMessage Message in case of failure.
+   * @param pSmall Small document.
+   * @param pLarge Large document.
+   * @throws Exception An error occurred.
+   */
+  private void assertScalesLinearly(String pMessage, String pSmall, String pLarge) throws Exception {
+    bestTimeOfToJson(pLarge);
+    long small = bestTimeOfToJson(pSmall);
+    long large = bestTimeOfToJson(pLarge);
+    assertTrue(pMessage + ": " + small + " ns vs. " + large + " ns", large < small * 24);
+  }
+
+  /**
+   * Get best time of several conversions.
+   *
+   * @param pXml XML document.
+   * @return Time in nanoseconds.
+   * @throws Exception An error occurred.
+   */
+  private long bestTimeOfToJson(String pXml) throws Exception {
+    long bestTime = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      long start = System.nanoTime();
+      assertNotNull(XmlToJson.toJson(pXml));
+      bestTime = Math.min(bestTime, System.nanoTime() - start);
+    }
+    return bestTime;
+  }
+
+  /**
+   * Create document with interleaved repeated siblings.
+   *
+   * @param pSize Number of siblings per name.
+   * @return XML document.
+   */
+  private static String interleavedSiblings(int pSize) {
+    StringBuilder xml = new StringBuilder("<r>");
+    for (int index = 0; index < pSize; index++) {
+      xml.append("<a>x").append(index).append("</a><b>y</b>");
+    }
+    return xml.append("</r>").toString();
+  }
+
+  /**
+   * Create document with nested elements. Each element holds an attribute
+   * and its child.
+   *
+   * @param pDepth Depth of the document.
+   * @return XML document.
+   */
+  private static String nestedElements(int pDepth) {
+    StringBuilder xml = new StringBuilder();
+    for (int index = 0; index < pDepth; index++) {
+      xml.append("<e i=\"").append(index).append("\">");
+    }
+    for (int index = 0; index < pDepth; index++) {
+      xml.append("</e>");
+    }
+    return xml.toString();
+  }
+
+  /**
+   * Create METS file group.
+   *
+   * @param pSize Number of files.
+   * @return XML document.
+   */
+  private static String fileGroup(int pSize) {
+    StringBuilder xml = new StringBuilder("<mets:fileGrp xmlns:mets=\"http://www.loc.gov/METS/\""
+            + " xmlns:xlink=\"http://www.w3.org/1999/xlink\" USE=\"DEFAULT\">");
+    for (int index = 0; index < pSize; index++) {
+      xml.append("<mets:file ID=\"FILE_").append(index).append("\" MIMETYPE=\"image/jpeg\">")
+              .append("<mets:FLocat LOCTYPE=\"URL\" xlink:href=\"http://example.org/").append(index)
+              .append(".jpg\"/></mets:file>");
+    }
+    return xml.append("</mets:fileGrp>").toString();
+  }
+
+  /**
+   * Read test file from classpath.
+   *
+   * @param pName Name of the file.
+   * @return Content of the file.
+   * @throws IOException An error occurred.
+   */
+  private String readResource(String pName) throws IOException {
+    try (InputStream is = getClass().getResourceAsStream(PATH + pName)) {
+      assertNotNull("Missing test file " + pName, is);
+      return IOUtils.toString(is, "UTF-8");
+    }
+  }
+
+  /**
+   * Compare JSON values independent of the order of the keys.
+   *
+   * @param pMessage Message in case of failure.
+   * @param pExpected Expected value.
+   * @param pActual Actual value.
+   */
+  private void assertSimilar(String pMessage, Object pExpected, Object pActual) {
+    assertTrue(pMessage + ": expected " + pExpected + " but was " + pActual, isSimilar(pExpected, pActual));
+  }
+
+  /**
+   * Compare JSON values independent of the order of the keys. Numbers are
+   * compared by value.
+   *
+   * @param pExpected Expected value.
+   * @param pActual Actual value.
+   * @return Equal or not.
+   */
+  private boolean isSimilar(Object pExpected, Object pActual) {
+    if (pExpected instanceof JSONObject && pActual instanceof JSONObject) {
+      JSONObject expected = (JSONObject) pExpected;
+      JSONObject actual = (JSONObject) pActual;
+      if (expected.length() != actual.length()) {
+        return false;
+      }
+      Iterator<?> keys = expected.keys();
+      while (keys.hasNext()) {
+        String key = (String) keys.next();
+        if (!actual.has(key) || !isSimilar(expected.get(key), actual.get(key))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (pExpected instanceof JSONArray && pActual instanceof JSONArray) {
+      JSONArray expected = (JSONArray) pExpected;
+      JSONArray actual = (JSONArray) pActual;
+      if (expected.length() != actual.length()) {
+        return false;
+      }
+      for (int index = 0; index < expected.length(); index++) {
+        if (!isSimilar(expected.get(index), actual.get(index))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (pExpected instanceof Number && pActual instanceof Number) {
+      return ((Number) pExpected).doubleValue() == ((Number) pActual).doubleValue();
+    }
+    return pExpected.getClass() == pActual.getClass() && pExpected.equals(pActual);
+  }
+}
@@ -20,12 +20,24 @@ import edu.kit.masi.plugin.index.IIndexPlugin;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.configuration.Configuration;
-import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
-import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +74,48 @@ public class ElasticsearchIndexPlugin extends AbstractServicePlugin implements I
    * Key for elasticsearch index. default: kitdatamanager
    */
   private static final String KEY_INDEX = "index";
+  /**
+   * Key for maximum number of documents per bulk request. default: 1000
+   */
+  private static final String KEY_BULK_ACTIONS = "bulkactions";
+  /**
+   * Key for maximum size of a bulk request (in MB). default: 5
+   */
+  private static final String KEY_BULK_SIZE = "bulksize";
+  /**
+   * Key for maximum time (in milliseconds) a document is buffered. default:
+   * 1000
+   */
+  private static final String KEY_FLUSH_INTERVAL = "flushinterval";
+  /**
+   * Key for maximum number of bulk requests executed concurrently. default: 1
+   * Values greater than 1 may apply updates of the same document in the wrong
+   * order.
+   */
+  private static final String KEY_CONCURRENT_REQUESTS = "concurrentrequests";
+  /**
+   * Key for number of retries of rejected bulk requests. default: 3
+   */
+  private static final String KEY_BACKOFF_RETRIES = "backoffretries";
+  /**
+   * Name of the analyzer splitting all values into trigrams. Search terms are
+   * also split into trigrams and searched as phrase, which matches any
+   * substring of a value in the index.
+   */
+  private static final String TRIGRAM_ANALYZER = "masi_trigram";
+  /**
+   * Length of the n-grams (minimum length of a search term).
+   */
+  private static final int NGRAM_LENGTH = 3;
+  /**
+   * Initial delay (in milliseconds) before retrying a rejected bulk request.
+   */
+  private static final long BACKOFF_DELAY = 100;
+  /**
+   * Maximum time (in milliseconds) to wait for pending bulk requests on
+   * shutdown.
+   */
+  private static final long SHUTDOWN_TIMEOUT = 30000;
   /**
    * Hostname of elasticsearch. default: localhost
    */
@@ -79,11 +133,39 @@ public class ElasticsearchIndexPlugin extends AbstractServicePlugin implements I
    * Index. default: kitdatamanager
    */
   private String index;
+  /**
+   * Maximum number of documents per bulk request.
+   */
+  private int bulkActions = 1000;
+  /**
+   * Maximum size of a bulk request (in MB).
+   */
+  private int bulkSize = 5;
+  /**
+   * Maximum time (in milliseconds) a document is buffered.
+   */
+  private long flushInterval = 1000;
+  /**
+   * Maximum number of bulk requests executed concurrently.
+   */
+  private int concurrentRequests = 1;
+  /**
+   * Number of retries of rejected bulk requests.
+   */
+  private int backoffRetries = 3;
 
   /**
    * Map with all clients.
    */
   private final static Map<String, TransportClient> ALL_CLIENTS = new HashMap<>();
+  /**
+   * All indices already checked for existence.
+   */
+  private final static Set<String> ALL_INDICES = ConcurrentHashMap.newKeySet();
+  /**
+   * Map with all bulk indexers.
+   */
+  private final static Map<String, BulkIndexer> ALL_BULK_INDEXERS = new HashMap<>();
 
   @Override
   public String getVersion() {
@@ -96,7 +178,13 @@ public class ElasticsearchIndexPlugin extends AbstractServicePlugin implements I
     port = pConfig.getInt(KEY_PORT);
     clusterName = pConfig.getString(KEY_CLUSTER_NAME);
     index = pConfig.getString(KEY_INDEX);
+    bulkActions = pConfig.getInt(KEY_BULK_ACTIONS, bulkActions);
+    bulkSize = pConfig.getInt(KEY_BULK_SIZE, bulkSize);
+    flushInterval = pConfig.getLong(KEY_FLUSH_INTERVAL, flushInterval);
+    concurrentRequests = pConfig.getInt(KEY_CONCURRENT_REQUESTS, concurrentRequests);
+    backoffRetries = pConfig.getInt(KEY_BACKOFF_RETRIES, backoffRetries);
     LOGGER.debug("Configure elasticsearch: url: {}:{}\ncluster name: {}, index: {}", hostname, port, clusterName, index);
+    LOGGER.debug("Bulk requests: max. {} documents/{} MB, flush interval: {} ms, concurrent requests: {}, retries: {}", bulkActions, bulkSize, flushInterval, concurrentRequests, backoffRetries);
   }
 
   @Override
@@ -125,28 +213,260 @@ public class ElasticsearchIndexPlugin extends AbstractServicePlugin implements I
     return client;
   }
 
+  /**
+   * Create index with the trigram analyzer for the '_all' field if it doesn't
+   * exist yet. Indices created before have to be reindexed to support
+   * substring search. A warning is logged for such indices.
+   *
+   * @param client Client connected to elasticsearch.
+   * @param pIndex Name of the index.
+   */
+  private static void ensureIndex(TransportClient client, String pIndex) {
+    if (ALL_INDICES.contains(pIndex)) {
+      return;
+    }
+    synchronized (ALL_INDICES) {
+      if (ALL_INDICES.contains(pIndex)) {
+        return;
+      }
+      if (client.admin().indices().prepareExists(pIndex).get().isExists()) {
+        String analyzer = client.admin().indices().prepareGetSettings(pIndex).get()
+                .getSetting(pIndex, "index.analysis.analyzer." + TRIGRAM_ANALYZER + ".type");
+        if (analyzer == null) {
+          LOGGER.warn("Index '{}' has no trigram analyzer. Substring search needs a reindex!", pIndex);
+        }
+      } else {
+        LOGGER.info("Create index '{}' with trigram analyzer.", pIndex);
+        Settings settings = Settings.builder()
+                .put("analysis.tokenizer." + TRIGRAM_ANALYZER + ".type", "ngram")
+                .put("analysis.tokenizer." + TRIGRAM_ANALYZER + ".min_gram", NGRAM_LENGTH)
+                .put("analysis.tokenizer." + TRIGRAM_ANALYZER + ".max_gram", NGRAM_LENGTH)
+                .putArray("analysis.tokenizer." + TRIGRAM_ANALYZER + ".token_chars", "letter", "digit")
+                .put("analysis.analyzer." + TRIGRAM_ANALYZER + ".type", "custom")
+                .put("analysis.analyzer." + TRIGRAM_ANALYZER + ".tokenizer", TRIGRAM_ANALYZER)
+                .putArray("analysis.analyzer." + TRIGRAM_ANALYZER + ".filter", "lowercase")
+                .build();
+        // Mapping is applied to all types (prefixes) of the index.
+        String defaultMapping = "{\"_default_\":{\"_all\":{\"enabled\":true,\"analyzer\":\"" + TRIGRAM_ANALYZER + "\"}}}";
+        try {
+          client.admin().indices().prepareCreate(pIndex).setSettings(settings).addMapping("_default_", defaultMapping).get();
+        } catch (ElasticsearchException ex) {
+          // Index may be created concurrently by another instance.
+          if (!client.admin().indices().prepareExists(pIndex).get().isExists()) {
+            throw ex;
+          }
+        }
+      }
+      ALL_INDICES.add(pIndex);
+    }
+  }
+
+  /**
+   * Get bulk indexer for the configured index. The indexer is created on
+   * first use and closed on shutdown (buffered documents are indexed before).
+   *
+   * @param client Client connected to elasticsearch.
+   * @return Bulk indexer.
+   */
+  private BulkIndexer getBulkIndexer(TransportClient client) {
+    String hash = hostname + "_" + clusterName + "_" + index;
+    synchronized (ALL_BULK_INDEXERS) {
+      BulkIndexer bulkIndexer = ALL_BULK_INDEXERS.get(hash);
+      if (bulkIndexer == null) {
+        LOGGER.trace("Create BulkIndexer for hash '{}'", hash);
+        bulkIndexer = new BulkIndexer(client, bulkActions, bulkSize, flushInterval, concurrentRequests, backoffRetries);
+        ALL_BULK_INDEXERS.put(hash, bulkIndexer);
+        BulkIndexer indexer = bulkIndexer;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> indexer.close(SHUTDOWN_TIMEOUT)));
+      }
+      return bulkIndexer;
+    }
+  }
+
+  /**
+   * Index JSON document for search. The document is buffered and indexed
+   * asynchronously together with other documents by one bulk request. The
+   * request is sent if the maximum number of documents or the maximum size is
+   * reached or the flush interval is elapsed. If the maximum number of
+   * concurrent requests is reached the caller waits until a request is
+   * finished. Documents failed to index are reported by 'flush'.
+   *
+   * @param pJsonDoc JSON document holding metadata.
+   * @param pDocumentId Id of the document. (Needed for updates of document.)
+   * @param pType Type of the document.
+   * @return True if document is queued for indexing.
+   */
   @Override
   public boolean indexJsonDocument(String pJsonDoc, String pDocumentId, String pType) {
     LOGGER.debug("Intitializing transport client..");
-    IndexResponse response;
     TransportClient client = getTransportClient(hostname, port, clusterName);
-//    try {
+    ensureIndex(client, index);
     if (LOGGER.isTraceEnabled()) {
       int length = Math.min(pJsonDoc.length(), 256);
       LOGGER.trace("Indexing document...{} ... length: {}", pJsonDoc.substring(0, length), pJsonDoc.length());
     } else {
       LOGGER.debug("Indexing document...");
     }
-    response = client.prepareIndex(index,
+    IndexRequest request = client.prepareIndex(index,
             pType,
             pDocumentId + "_" + pType).
             setSource(pJsonDoc)
-            .execute()
-            .actionGet();
-//    }
-    LOGGER.debug("Document with id {} was {}. Current document version: {}", response.getId(), (response.status().equals(RestStatus.CREATED)) ? "created" : "updated", response.getVersion());
+            .request();
+    getBulkIndexer(client).add(request);
+    LOGGER.debug("Document with id {} queued for indexing.", request.id());
 
     return true;
   }
 
+  @Override
+  public boolean flush(long pTimeout) {
+    boolean allIndexed = true;
+    BulkIndexer bulkIndexer;
+    synchronized (ALL_BULK_INDEXERS) {
+      bulkIndexer = ALL_BULK_INDEXERS.get(hostname + "_" + clusterName + "_" + index);
+    }
+    if (bulkIndexer != null) {
+      allIndexed = bulkIndexer.flush(pTimeout);
+    }
+    return allIndexed;
+  }
+
+  /**
+   * Buffers index requests and sends them as bulk requests. Counts the
+   * requests not finished yet to wait for them and the documents failed to
+   * index.
+   */
+  private static class BulkIndexer implements BulkProcessor.Listener {
+
+    /**
+     * Bulk processor buffering the index requests.
+     */
+    private final BulkProcessor bulkProcessor;
+    /**
+     * Number of bulk requests not finished yet.
+     */
+    private int pendingRequests = 0;
+    /**
+     * Number of documents failed to index since the last flush.
+     */
+    private int failedDocuments = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param client Client connected to elasticsearch.
+     * @param bulkActions Maximum number of documents per bulk request.
+     * @param bulkSize Maximum size of a bulk request (in MB).
+     * @param flushInterval Maximum time (in milliseconds) a document is
+     * buffered.
+     * @param concurrentRequests Maximum number of bulk requests executed
+     * concurrently.
+     * @param backoffRetries Number of retries of rejected bulk requests.
+     */
+    BulkIndexer(Client client, int bulkActions, int bulkSize, long flushInterval, int concurrentRequests, int backoffRetries) {
+      bulkProcessor = BulkProcessor.builder(client, this)
+              .setBulkActions(bulkActions)
+              .setBulkSize(new ByteSizeValue(bulkSize, ByteSizeUnit.MB))
+              .setFlushInterval(TimeValue.timeValueMillis(flushInterval))
+              .setConcurrentRequests(concurrentRequests)
+              .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(BACKOFF_DELAY), backoffRetries))
+              .build();
+    }
+
+    /**
+     * Add index request to the buffer.
+     *
+     * @param request Index request.
+     */
+    void add(IndexRequest request) {
+      bulkProcessor.add(request);
+    }
+
+    /**
+     * Send all buffered requests and wait until all requests are finished.
+     *
+     * @param timeout Maximum time to wait (in milliseconds).
+     * @return True if all requests are finished within the given time and
+     * no document failed to index since the last flush.
+     */
+    boolean flush(long timeout) {
+      bulkProcessor.flush();
+      long deadline = System.currentTimeMillis() + timeout;
+      synchronized (this) {
+        try {
+          while (pendingRequests > 0) {
+            long remainingTime = deadline - System.currentTimeMillis();
+            if (remainingTime <= 0) {
+              LOGGER.warn("{} bulk request(s) still pending after {} ms!", pendingRequests, timeout);
+              return false;
+            }
+            wait(remainingTime);
+          }
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+        if (failedDocuments > 0) {
+          LOGGER.warn("{} document(s) failed to index!", failedDocuments);
+          failedDocuments = 0;
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Send all buffered requests and close the bulk processor.
+     *
+     * @param timeout Maximum time to wait (in milliseconds).
+     */
+    void close(long timeout) {
+      try {
+        if (!bulkProcessor.awaitClose(timeout, TimeUnit.MILLISECONDS)) {
+          LOGGER.warn("Bulk requests still pending after {} ms!", timeout);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public synchronized void beforeBulk(long executionId, BulkRequest request) {
+      pendingRequests++;
+      LOGGER.debug("Send bulk request #{} with {} document(s).", executionId, request.numberOfActions());
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+      int failures = 0;
+      if (response.hasFailures()) {
+        LOGGER.error("Error while indexing documents of bulk request #{}: {}", executionId, response.buildFailureMessage());
+        for (BulkItemResponse item : response.getItems()) {
+          if (item.isFailed()) {
+            failures++;
+          }
+        }
+      } else {
+        LOGGER.debug("Bulk request #{} with {} document(s) finished in {} ms.", executionId, request.numberOfActions(), response.getTookInMillis());
+      }
+      requestFinished(failures);
+    }
+
+    @Override
+    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+      LOGGER.error("Bulk request #" + executionId + " with " + request.numberOfActions() + " document(s) failed!", failure);
+      requestFinished(request.numberOfActions());
+    }
+
+    /**
+     * Bulk request finished. Wake up all threads waiting for pending requests.
+     *
+     * @param failures Number of documents failed to index.
+     */
+    private synchronized void requestFinished(int failures) {
+      pendingRequests--;
+      failedDocuments += failures;
+      notifyAll();
+    }
+  }
 }
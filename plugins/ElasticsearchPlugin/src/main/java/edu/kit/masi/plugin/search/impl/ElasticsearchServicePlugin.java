@@ -27,17 +27,22 @@ import org.elasticsearch.client.Client;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.transport.InetSocketTransportAddress;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 import org.json.JSONArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import edu.kit.masi.plugin.search.ISearchPlugin;
+import edu.kit.masi.plugin.search.SearchResultPage;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import org.apache.commons.configuration.Configuration;
 import org.elasticsearch.client.transport.TransportClient;
@@ -77,6 +82,26 @@ public class ElasticsearchServicePlugin extends AbstractServicePlugin implements
   private static final String KEY_INDEX = "index";
 
   private static final String ALL_INDICES = "_all";
+  /**
+   * Field containing all values of a document.
+   */
+  private static final String ALL_FIELD = "_all";
+  /**
+   * Maximum number of hits retrievable from elasticsearch (from + size).
+   */
+  private static final int MAX_NUMBER_OF_HITS = 10000;
+  /**
+   * Maximum number of hits retrieved with one request.
+   */
+  private static final int MAX_PAGE_SIZE = 1000;
+  /**
+   * Field with unique ID of each hit. (Tie breaker for sorting)
+   */
+  private static final String UID_FIELD = "_uid";
+  /**
+   * Separator of the sort values inside a cursor.
+   */
+  private static final String CURSOR_SEPARATOR = ":";
   /**
    * Cluster name.
    */
@@ -135,6 +160,24 @@ public class ElasticsearchServicePlugin extends AbstractServicePlugin implements
     return searchForMets(pCombination, indices, types, pValues);
   }
 
+  @Override
+  public String[] searchForMets(Combination pCombination, String[] types, String[] pValues, int pMaxNoOfHits) {
+    String[] indices = {ALL_INDICES};
+    return searchForMets(pCombination, indices, types, pValues, pMaxNoOfHits);
+  }
+
+  @Override
+  public SearchResultPage searchForMets(Combination pCombination, String[] types, String[] pValues, int pPageSize, String pCursor) {
+    String[] indices = {ALL_INDICES};
+    return searchForMets(pCombination, indices, types, pValues, pPageSize, pCursor);
+  }
+
+  @Override
+  public Map<String, Map<String, Object>> searchForMetsWithSource(Combination pCombination, String[] types, String[] pValues, int pMaxNoOfHits) {
+    String[] indices = {ALL_INDICES};
+    return searchForMetsWithSource(pCombination, indices, types, pValues, pMaxNoOfHits);
+  }
+
   /**
    * Full text search for given search terms. Disjunction: At least one of the
    * search terms has to fit. Conjunction: All search terms have to fit.
@@ -146,54 +189,51 @@ public class ElasticsearchServicePlugin extends AbstractServicePlugin implements
    * @return IDs of all fitting documents.
    */
   public String[] searchForMets(Combination pCombination, String[] indices, String[] types, String[] pValues) {
-    boolean validSearchTerm = false;
+    return searchForMets(pCombination, indices, types, pValues, MAX_NUMBER_OF_HITS);
+  }
+
+  /**
+   * Full text search for given search terms returning the best hits only.
+   * Disjunction: At least one of the search terms has to fit. Conjunction: All
+   * search terms have to fit. Only the hits needed are requested from
+   * elasticsearch.
+   *
+   * @param pCombination dis- or conjunction
+   * @param indices Restrict to given indices.
+   * @param types Restrict to given types of documents
+   * @param pValues Search terms.
+   * @param pMaxNoOfHits Maximum number of IDs returned.
+   * @return IDs of the best fitting documents (ordered by relevance).
+   */
+  public String[] searchForMets(Combination pCombination, String[] indices, String[] types, String[] pValues, int pMaxNoOfHits) {
     if (LOGGER.isTraceEnabled()) {
       LOGGER.trace("Search for metadata: " + pCombination + ", Indices: " + String.join(", ", indices) + ", Types: " + String.join(", ", types) + ", Terms: " + String.join(", ", pValues));
     }
 
     Client client = getTransportClient(host, port, cluster);
-    BoolQueryBuilder query2 = QueryBuilders.boolQuery();
-    int minimumNumber = 0;
-    for (String term : pValues) {
-      term = term.toLowerCase();
-      for (String value : term.split("[^a-z0-9äöüß]+")) {
-        if (value.length() > 2) {
-          LOGGER.info("Search for regexp: '.*{}.*'", value);
-          if (pCombination == Combination.CONJUNCTION) {
-            minimumNumber++;
-          }
-          query2.should(QueryBuilders.regexpQuery("_all", ".*" + value + ".*"));
-          validSearchTerm = true;
-        } else {
-          LOGGER.info("Term '{}' is to short: term skipped!", value);
-        }
-      }
-    }
-    if (pCombination == Combination.DISJUNCTION) {
-      minimumNumber = 1;
-    }
-    query2.minimumNumberShouldMatch(minimumNumber);
-//    return search(types, query2.toString());
-    Set<String> results = new HashSet<>();
-    if (validSearchTerm) {
-      SearchRequestBuilder prepareSearch = client.prepareSearch(indices);
+    QueryBuilder query2 = buildQuery(pCombination, pValues);
+    boolean validSearchTerm = query2 != null;
+    // Keep order of hits (relevance).
+    Set<String> results = new LinkedHashSet<>();
+    int maxNumberOfReturnedHits = Math.max(0, Math.min(pMaxNoOfHits, MAX_NUMBER_OF_HITS));
+    if (validSearchTerm && maxNumberOfReturnedHits > 0) {
+      SearchRequestBuilder prepareSearch = prepareSearch(client, indices, query2, false);
       SearchResponse searchResponse;
-      int pageIndex = 0;
-      int pageSize = 1000;
-      long maxNumberOfHits = 10000;
-      long maxNumberOfReturnedHits = 10000;
+      // Several sections of one digital object may fit. So a page may contain
+      // less digital objects than hits and another page is needed.
+      int pageSize = Math.min(maxNumberOfReturnedHits, MAX_PAGE_SIZE);
+      int from = 0;
       long totalNumberOfHits;
-      // Add pagination as the number of results is limited to 10 by default and
-      // the maximum number is limited to 1000.
       do {
-        searchResponse = prepareSearch.setSearchType(SearchType.DEFAULT).setQuery(query2).setSize(pageSize).setFrom(pageIndex * pageSize).execute().actionGet();
+        int size = Math.min(pageSize, MAX_NUMBER_OF_HITS - from);
+        searchResponse = prepareSearch.setSize(size).setFrom(from).execute().actionGet();
         totalNumberOfHits = searchResponse.getHits().getTotalHits();
-        if (totalNumberOfHits > maxNumberOfHits) {
-          LOGGER.warn("Number of results is cut from  '{}' to '{}'!", totalNumberOfHits, maxNumberOfHits);
-          totalNumberOfHits = maxNumberOfHits;
+        if (totalNumberOfHits > MAX_NUMBER_OF_HITS) {
+          LOGGER.warn("Number of results is cut from  '{}' to '{}'!", totalNumberOfHits, MAX_NUMBER_OF_HITS);
+          totalNumberOfHits = MAX_NUMBER_OF_HITS;
         }
-        LOGGER.debug("Estimated number of results: '{}' [Retrieve index {} - {}]!", totalNumberOfHits, pageIndex * pageSize, (pageIndex + 1) * pageSize);
-        pageIndex++;
+        LOGGER.debug("Estimated number of results: '{}' [Retrieve index {} - {}]!", totalNumberOfHits, from, from + size);
+        from += size;
         for (SearchHit hit : searchResponse.getHits().getHits()) {
           String elasticSearchId = hit.id();
           String[] partsOfId;
@@ -203,21 +243,186 @@ public class ElasticsearchServicePlugin extends AbstractServicePlugin implements
             break;
           }
           LOGGER.debug("Found DigitalObject with id: '{}' in index '{}'", partsOfId[0], partsOfId[1]);
-          if (LOGGER.isTraceEnabled()) {
-            Map<String, Object> source = hit.getSource();
-            LOGGER.trace("ID: " + hit.id());
-            for (String key : source.keySet()) {
-              LOGGER.trace(key + ": " + source.get(key));
-            }
+        }
+      } while (results.size() < maxNumberOfReturnedHits && totalNumberOfHits > from);
+    }
+    LOGGER.debug("Found '{}' results!", results.size());
+    return results.toArray(new String[results.size()]);
+  }
+
+  /**
+   * Full text search for given search terms returning one page of hits. The
+   * hits are sorted by relevance and the cursor holds the sort values (score
+   * and uid) of the last hit used. The next page continues directly after this
+   * hit ('search_after'), so each page costs the same regardless of its
+   * position. If sections of one digital object are placed on different pages
+   * its ID may appear on both pages.
+   *
+   * @param pCombination dis- or conjunction
+   * @param indices Restrict to given indices.
+   * @param types Restrict to given types of documents
+   * @param pValues Search terms.
+   * @param pPageSize Maximum number of IDs returned.
+   * @param pCursor Cursor returned with the previous page. (null for first
+   * page)
+   * @return IDs of the page (ordered by relevance) and cursor for the next
+   * page.
+   */
+  public SearchResultPage searchForMets(Combination pCombination, String[] indices, String[] types, String[] pValues, int pPageSize, String pCursor) {
+    Object[] searchAfter = pCursor == null ? null : parseCursor(pCursor);
+    QueryBuilder query = buildQuery(pCombination, pValues);
+    Set<String> results = new LinkedHashSet<>();
+    boolean moreHits = false;
+    int pageSize = Math.max(1, Math.min(pPageSize, MAX_PAGE_SIZE));
+    if (query != null) {
+      Client client = getTransportClient(host, port, cluster);
+      // Several sections of one digital object may fit. So a page may contain
+      // less digital objects than hits and another request is needed.
+      do {
+        SearchRequestBuilder prepareSearch = prepareSearch(client, indices, query, false).setSize(pageSize)
+                .addSort(SortBuilders.scoreSort()).addSort(SortBuilders.fieldSort(UID_FIELD).order(SortOrder.ASC));
+        if (searchAfter != null) {
+          prepareSearch.searchAfter(searchAfter);
+        }
+        SearchHit[] hits = prepareSearch.execute().actionGet().getHits().getHits();
+        int usedHits = 0;
+        for (SearchHit hit : hits) {
+          usedHits++;
+          searchAfter = hit.getSortValues();
+          results.add(hit.id().split("_", 2)[0]);
+          if (results.size() >= pageSize) {
+            break;
           }
         }
-        if (results.size() >= maxNumberOfReturnedHits) {
-          break;
+        moreHits = usedHits < hits.length || hits.length == pageSize;
+      } while (results.size() < pageSize && moreHits);
+    }
+    String nextCursor = moreHits ? formatCursor(searchAfter) : null;
+    LOGGER.debug("Found '{}' results! Next cursor: '{}'", results.size(), nextCursor);
+    return new SearchResultPage(results.toArray(new String[results.size()]), nextCursor);
+  }
+
+  /**
+   * Full text search for given search terms returning the best hits together
+   * with their source. Only use this method if the field values are needed,
+   * otherwise use the methods returning IDs only.
+   *
+   * @param pCombination dis- or conjunction
+   * @param indices Restrict to given indices.
+   * @param types Restrict to given types of documents (null or empty for all
+   * types)
+   * @param pValues Search terms.
+   * @param pMaxNoOfHits Maximum number of hits returned.
+   * @return Source of the best fitting sections by their elasticsearch ID
+   * (ordered by relevance).
+   */
+  public Map<String, Map<String, Object>> searchForMetsWithSource(Combination pCombination, String[] indices, String[] types, String[] pValues, int pMaxNoOfHits) {
+    QueryBuilder query = buildQuery(pCombination, pValues);
+    Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+    int maxNumberOfReturnedHits = Math.max(0, Math.min(pMaxNoOfHits, MAX_NUMBER_OF_HITS));
+    if (query != null && maxNumberOfReturnedHits > 0) {
+      Client client = getTransportClient(host, port, cluster);
+      SearchRequestBuilder prepareSearch = prepareSearch(client, indices, query, true);
+      if (types != null && types.length > 0) {
+        prepareSearch.setTypes(types);
+      }
+      int from = 0;
+      boolean moreHits;
+      do {
+        int size = Math.min(MAX_PAGE_SIZE, maxNumberOfReturnedHits - from);
+        SearchHit[] hits = prepareSearch.setSize(size).setFrom(from).execute().actionGet().getHits().getHits();
+        for (SearchHit hit : hits) {
+          results.put(hit.id(), hit.getSource());
+          if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("ID: {} - Source: {}", hit.id(), hit.getSource());
+          }
         }
-      } while (totalNumberOfHits > pageIndex * pageSize);
+        from += hits.length;
+        moreHits = hits.length == size;
+      } while (moreHits && from < maxNumberOfReturnedHits);
     }
     LOGGER.debug("Found '{}' results!", results.size());
-    return results.toArray(new String[results.size()]);
+    return results;
+  }
+
+  /**
+   * Prepare search request for given query. Without source only the metadata
+   * of the hits (ID, type, score) is transferred.
+   *
+   * @param client Client connected to elasticsearch.
+   * @param indices Restrict to given indices.
+   * @param query Query.
+   * @param withSource Transfer source of the hits.
+   * @return Search request.
+   */
+  private static SearchRequestBuilder prepareSearch(Client client, String[] indices, QueryBuilder query, boolean withSource) {
+    return client.prepareSearch(indices).setSearchType(SearchType.DEFAULT).setQuery(query).setFetchSource(withSource);
+  }
+
+  /**
+   * Build query for given search terms. Terms with less than 3 characters are
+   * skipped. The '_all' field is split into trigrams (see
+   * ElasticsearchIndexPlugin). Each term is also split into trigrams and
+   * searched as phrase. So the term matches any value containing it without
+   * scanning all terms of the index.
+   *
+   * @param pCombination dis- or conjunction
+   * @param pValues Search terms.
+   * @return Query or null if no valid search term is given.
+   */
+  private QueryBuilder buildQuery(Combination pCombination, String[] pValues) {
+    boolean validSearchTerm = false;
+    BoolQueryBuilder query = QueryBuilders.boolQuery();
+    int minimumNumber = 0;
+    for (String term : pValues) {
+      term = term.toLowerCase();
+      for (String value : term.split("[^a-z0-9äöüß]+")) {
+        if (value.length() > 2) {
+          LOGGER.debug("Search for substring: '{}'", value);
+          if (pCombination == Combination.CONJUNCTION) {
+            minimumNumber++;
+          }
+          query.should(QueryBuilders.matchPhraseQuery(ALL_FIELD, value));
+          validSearchTerm = true;
+        } else {
+          LOGGER.info("Term '{}' is to short: term skipped!", value);
+        }
+      }
+    }
+    if (pCombination == Combination.DISJUNCTION) {
+      minimumNumber = 1;
+    }
+    query.minimumNumberShouldMatch(minimumNumber);
+    return validSearchTerm ? query : null;
+  }
+
+  /**
+   * Format sort values of a hit as cursor.
+   *
+   * @param pSortValues Sort values (score and uid).
+   * @return Cursor.
+   */
+  private static String formatCursor(Object[] pSortValues) {
+    return ((Number) pSortValues[0]).floatValue() + CURSOR_SEPARATOR + pSortValues[1];
+  }
+
+  /**
+   * Parse cursor to sort values.
+   *
+   * @param pCursor Cursor.
+   * @return Sort values (score and uid).
+   * @throws IllegalArgumentException Invalid cursor.
+   */
+  private static Object[] parseCursor(String pCursor) {
+    int separator = pCursor.indexOf(CURSOR_SEPARATOR);
+    try {
+      if (separator > 0) {
+        return new Object[]{Float.parseFloat(pCursor.substring(0, separator)), pCursor.substring(separator + 1)};
+      }
+    } catch (NumberFormatException nfe) {
+      throw new IllegalArgumentException("Invalid cursor '" + pCursor + "'!", nfe);
+    }
+    throw new IllegalArgumentException("Invalid cursor '" + pCursor + "'!");
   }
 
   @Override
@@ -58,13 +58,28 @@ public interface IIndexPlugin extends IServicePlugin {
   }
   
   /**
-   * Index JSON document for search.
+   * Index JSON document for search. Plugins indexing documents
+   * asynchronously may return before the document is indexed. Their
+   * failures are reported by 'flush'.
    *
    * @param pJsonDoc JSON document holding metadata.
    * @param pDocumentId Id of the document. (Needed for updates of document.)
    * @param pType Type of the document.
-   * @return True if indexing succeeds.
+   * @return True if indexing succeeds (or the document is queued for
+   * asynchronous indexing).
    */
   public boolean indexJsonDocument(String pJsonDoc, String pDocumentId, String pType);
+
+  /**
+   * Wait until all documents passed to 'indexJsonDocument' are indexed.
+   * Plugins indexing documents asynchronously have to override this method.
+   *
+   * @param pTimeout Maximum time to wait (in milliseconds).
+   * @return True if all documents are indexed successfully within the given
+   * time.
+   */
+  default boolean flush(long pTimeout) {
+    return true;
+  }
    
 }
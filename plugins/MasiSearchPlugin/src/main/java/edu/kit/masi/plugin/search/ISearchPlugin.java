@@ -16,6 +16,10 @@
 package edu.kit.masi.plugin.search;
 
 import edu.kit.masi.plugin.IServicePlugin;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Interface to separate code from implementation.
@@ -86,6 +90,80 @@ public interface ISearchPlugin extends IServicePlugin {
    * @return IDs of all fitting documents.
    */
   String[] searchForMets(Combination pCombination, String[] types, String[] pValues);
+  /**
+   * Full text search for given search terms returning the best hits only.
+   * Disjunction: At least one of the search terms has to fit.
+   * Conjunction: All search terms have to fit.
+   * Plugins should override this method to fetch only the needed hits from
+   * the search engine.
+   * @param pCombination dis- or conjunction
+   * @param types Restrict to given types of documents 
+   * @param pValues Search terms.
+   * @param pMaxNoOfHits Maximum number of IDs returned.
+   * @return IDs of the best fitting documents (ordered by relevance).
+   */
+  default String[] searchForMets(Combination pCombination, String[] types, String[] pValues, int pMaxNoOfHits) {
+    String[] allHits = searchForMets(pCombination, types, pValues);
+    return allHits.length <= pMaxNoOfHits ? allHits : Arrays.copyOf(allHits, pMaxNoOfHits);
+  }
+  /**
+   * Full text search for given search terms returning the best hits together
+   * with their source. Only use this method if the field values are needed,
+   * otherwise use the methods returning IDs only.
+   * Disjunction: At least one of the search terms has to fit.
+   * Conjunction: All search terms have to fit.
+   * The default implementation returns the IDs of the best fitting documents
+   * without any source. Plugins should override this method if the search
+   * engine stores the source of the hits.
+   * @param pCombination dis- or conjunction
+   * @param types Restrict to given types of documents 
+   * @param pValues Search terms.
+   * @param pMaxNoOfHits Maximum number of hits returned.
+   * @return Source of the best fitting hits by their ID (ordered by relevance).
+   */
+  default Map<String, Map<String, Object>> searchForMetsWithSource(Combination pCombination, String[] types, String[] pValues, int pMaxNoOfHits) {
+    Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+    for (String id : searchForMets(pCombination, types, pValues, pMaxNoOfHits)) {
+      results.put(id, Collections.emptyMap());
+    }
+    return results;
+  }
+  /**
+   * Full text search for given search terms returning one page of hits.
+   * Disjunction: At least one of the search terms has to fit.
+   * Conjunction: All search terms have to fit.
+   * The default implementation uses the position of the first hit as cursor
+   * and has to fetch all hits before this position. Plugins should override
+   * this method to continue directly after the last hit of the previous page.
+   * @param pCombination dis- or conjunction
+   * @param types Restrict to given types of documents 
+   * @param pValues Search terms.
+   * @param pPageSize Maximum number of IDs returned.
+   * @param pCursor Cursor returned with the previous page. (null for first page)
+   * @return IDs of the page (ordered by relevance) and cursor for the next page.
+   * @throws IllegalArgumentException Invalid cursor.
+   */
+  default SearchResultPage searchForMets(Combination pCombination, String[] types, String[] pValues, int pPageSize, String pCursor) {
+    int offset = 0;
+    if (pCursor != null) {
+      try {
+        offset = Integer.parseInt(pCursor);
+      } catch (NumberFormatException nfe) {
+        throw new IllegalArgumentException("Invalid cursor '" + pCursor + "'!", nfe);
+      }
+      if (offset < 0) {
+        throw new IllegalArgumentException("Invalid cursor '" + pCursor + "'!");
+      }
+    }
+    // Fetch one more hit to check for a further page.
+    String[] hits = searchForMets(pCombination, types, pValues, offset + pPageSize + 1);
+    if (offset >= hits.length) {
+      return new SearchResultPage(new String[0], null);
+    }
+    int end = Math.min(offset + pPageSize, hits.length);
+    String nextCursor = end < hits.length ? Integer.toString(end) : null;
+    return new SearchResultPage(Arrays.copyOfRange(hits, offset, end), nextCursor);
+  }
   /**
    * Proprietary search using query language of the used search engine.
    * @param query Query string.
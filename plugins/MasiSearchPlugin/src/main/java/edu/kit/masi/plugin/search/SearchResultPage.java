@@ -0,0 +1,65 @@
+/*
+ * Copyright 2017 Karlsruhe Institute of Technology.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.kit.masi.plugin.search;
+
+/**
+ * One page of a search. Holds the IDs of the page and the cursor for the next
+ * page.
+ *
+ * @author hartmann-v
+ */
+public class SearchResultPage {
+
+  /**
+   * IDs of the page (ordered by relevance).
+   */
+  private final String[] ids;
+  /**
+   * Cursor for the next page.
+   */
+  private final String cursor;
+
+  /**
+   * Constructor.
+   *
+   * @param pIds IDs of the page (ordered by relevance).
+   * @param pCursor Cursor for the next page. (null if no further hits
+   * available)
+   */
+  public SearchResultPage(String[] pIds, String pCursor) {
+    ids = pIds;
+    cursor = pCursor;
+  }
+
+  /**
+   * Get IDs of the page.
+   *
+   * @return IDs (ordered by relevance).
+   */
+  public String[] getIds() {
+    return ids;
+  }
+
+  /**
+   * Get cursor for the next page. The cursor is opaque and only valid for the
+   * same search.
+   *
+   * @return Cursor or null if no further hits available.
+   */
+  public String getCursor() {
+    return cursor;
+  }
+}